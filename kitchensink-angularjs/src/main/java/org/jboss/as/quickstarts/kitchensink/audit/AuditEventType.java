@@ -0,0 +1,56 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+/**
+ * The kinds of audit record. The code is what is stored in a record; 0 marks the unwritten rest of a file.
+ */
+public enum AuditEventType {
+
+    REGISTERED(1),
+    UPDATED(2),
+    /**
+     * Stands in for events that were dropped because the ring buffer was full; its count says how many.
+     */
+    DROPPED(3);
+
+    private final byte code;
+
+    private AuditEventType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @return the type with the given code, or null for the end-of-data code 0
+     * @throws IllegalArgumentException for any other unknown code
+     */
+    public static AuditEventType fromCode(byte code) {
+        if (code == 0) {
+            return null;
+        }
+        for (AuditEventType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("unknown audit record type " + code);
+    }
+}
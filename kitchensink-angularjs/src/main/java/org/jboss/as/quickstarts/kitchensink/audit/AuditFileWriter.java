@@ -0,0 +1,162 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Writes audit records to a rolling set of memory-mapped files in one directory, named {@code audit-NNNNNNNNNN.log}
+ * in the order they were started. Each file is created at its full size and holds a fixed number of records; when it
+ * is full the next one is started, and the oldest files beyond the configured number are deleted. A restart always
+ * starts a new file.
+ * <p/>
+ * Records are written straight into the mapped pages, so a record is in the operating system's hands, and survives
+ * the JVM, as soon as it is written; the pages are forced to disk when a file is finished and on {@link #close()}.
+ * Not thread-safe: it is meant for the single thread that drains the {@link AuditRingBuffer}.
+ */
+public class AuditFileWriter implements AuditSink {
+
+    static final String PREFIX = "audit-";
+
+    static final String SUFFIX = ".log";
+
+    private final Logger log;
+
+    private final File directory;
+
+    private final int recordsPerFile;
+
+    private final int maxFiles;
+
+    private long fileNumber;
+
+    private RandomAccessFile file;
+
+    private MappedByteBuffer buffer;
+
+    private int recordsInFile;
+
+    /**
+     * Only this writer's thread writes it; it is volatile for statistics.
+     */
+    private volatile long recordsWritten;
+
+    public AuditFileWriter(Logger log, File directory, int recordsPerFile, int maxFiles) throws IOException {
+        Preconditions.checkArgument(recordsPerFile > 0, "recordsPerFile must be positive");
+        Preconditions.checkArgument(maxFiles > 0, "maxFiles must be positive");
+        this.log = log;
+        this.directory = directory;
+        this.recordsPerFile = recordsPerFile;
+        this.maxFiles = maxFiles;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create audit log directory " + directory);
+        }
+        File[] existing = logFiles(directory);
+        fileNumber = existing.length == 0 ? 0 : numberOf(existing[existing.length - 1]);
+        startNextFile();
+    }
+
+    @Override
+    public void write(AuditEventType type, long timestampMillis, long memberId, long version, int count)
+            throws IOException {
+        if (recordsInFile == recordsPerFile) {
+            finishFile();
+            startNextFile();
+        }
+        int offset = AuditRecordFormat.HEADER_SIZE + recordsInFile * AuditRecordFormat.RECORD_SIZE;
+        AuditRecordFormat.writeRecord(buffer, offset, type, timestampMillis, memberId, version, count);
+        recordsInFile++;
+        recordsWritten++;
+    }
+
+    /**
+     * @return the number of records written since this writer was created
+     */
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public void close() throws IOException {
+        if (file != null) {
+            finishFile();
+        }
+    }
+
+    private void startNextFile() throws IOException {
+        fileNumber++;
+        File next = new File(directory, String.format("%s%010d%s", PREFIX, fileNumber, SUFFIX));
+        file = new RandomAccessFile(next, "rw");
+        long size = AuditRecordFormat.HEADER_SIZE + (long) recordsPerFile * AuditRecordFormat.RECORD_SIZE;
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        AuditRecordFormat.writeHeader(buffer);
+        recordsInFile = 0;
+        deleteOldFiles();
+    }
+
+    private void finishFile() throws IOException {
+        buffer.force();
+        file.close();
+        // the mapping itself is released when the buffer is collected
+        buffer = null;
+        file = null;
+    }
+
+    private void deleteOldFiles() {
+        File[] files = logFiles(directory);
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            if (!files[i].delete()) {
+                log.warning("cannot delete old audit log " + files[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the audit log files in the directory, oldest first
+     */
+    static File[] logFiles(File directory) {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        // the numbers are zero-padded, so names sort in the order the files were started
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long numberOf(File logFile) {
+        String name = logFile.getName();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
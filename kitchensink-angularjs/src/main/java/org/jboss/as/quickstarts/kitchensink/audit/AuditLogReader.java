@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads audit logs back, and prints them when run as a program:
+ * <pre>
+ * java -cp WEB-INF/classes org.jboss.as.quickstarts.kitchensink.audit.AuditLogReader &lt;directory or file&gt;...
+ * </pre>
+ * A directory is read file by file, oldest first. Reading a file that is still being written is safe, and shows the
+ * records written so far.
+ */
+public class AuditLogReader {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: AuditLogReader <audit log directory or file>...");
+            System.exit(2);
+        }
+        for (String arg : args) {
+            for (AuditRecord record : read(new File(arg))) {
+                System.out.println(record);
+            }
+        }
+    }
+
+    /**
+     * @param path an audit log directory, or a single audit log file
+     * @return the records, in the order they were written
+     */
+    public static List<AuditRecord> read(File path) throws IOException {
+        List<AuditRecord> records = new ArrayList<AuditRecord>();
+        if (path.isDirectory()) {
+            for (File file : AuditFileWriter.logFiles(path)) {
+                readFile(file, records);
+            }
+        } else {
+            readFile(path, records);
+        }
+        return records;
+    }
+
+    private static void readFile(File file, List<AuditRecord> records) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+            AuditRecordFormat.checkHeader(buffer);
+            for (int offset = AuditRecordFormat.HEADER_SIZE;
+                 offset + AuditRecordFormat.RECORD_SIZE <= buffer.limit();
+                 offset += AuditRecordFormat.RECORD_SIZE) {
+                AuditRecord record = AuditRecordFormat.readRecord(buffer, offset);
+                if (record == null) {
+                    break;
+                }
+                records.add(record);
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+/**
+ * What a writer does when an event arrives and the ring buffer is full, set with the
+ * {@code kitchensink.audit.overflow} system property.
+ */
+public enum AuditOverflowPolicy {
+
+    /**
+     * Loses the event, and has the writer record how many were lost; the caller never waits. This is the default.
+     */
+    DROP,
+
+    /**
+     * Makes the caller wait until the background writer has made room, so no event is lost.
+     */
+    BLOCK
+}
@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * One record read back from an audit log; see {@link AuditRecordFormat}.
+ */
+public class AuditRecord {
+
+    private final AuditEventType type;
+
+    private final long timestampMillis;
+
+    private final long memberId;
+
+    private final long version;
+
+    private final int count;
+
+    public AuditRecord(AuditEventType type, long timestampMillis, long memberId, long version, int count) {
+        this.type = type;
+        this.timestampMillis = timestampMillis;
+        this.memberId = memberId;
+        this.version = version;
+        this.count = count;
+    }
+
+    public AuditEventType getType() {
+        return type;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getMemberId() {
+        return memberId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return for a {@link AuditEventType#DROPPED} record, the number of events lost
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String time = format.format(new Date(timestampMillis));
+        if (type == AuditEventType.DROPPED) {
+            return time + " " + type + " " + count + " events";
+        }
+        return time + " " + type + " member " + memberId + " version " + version;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary layout of audit log files. All numbers are big-endian.
+ * <p/>
+ * A file starts with a {@value #HEADER_SIZE} byte header: the magic number {@code KSAUDIT1} (8 bytes), the format
+ * version (int) and the record size (int). Fixed-size records of {@value #RECORD_SIZE} bytes follow:
+ * <pre>
+ *  0  long  timestamp, in milliseconds since the epoch
+ *  8  long  member id
+ * 16  long  member version after the change
+ * 24  byte  {@link AuditEventType} code; 0 for the unwritten rest of the file
+ * 25  3 bytes reserved, always 0
+ * 28  int   for a DROPPED record, the number of events lost; 0 otherwise
+ * </pre>
+ */
+public final class AuditRecordFormat {
+
+    static final long MAGIC = 0x4B53415544495431L; // "KSAUDIT1"
+
+    static final int FORMAT_VERSION = 1;
+
+    public static final int HEADER_SIZE = 16;
+
+    public static final int RECORD_SIZE = 32;
+
+    private AuditRecordFormat() {
+    }
+
+    static void writeHeader(ByteBuffer buffer) {
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, FORMAT_VERSION);
+        buffer.putInt(12, RECORD_SIZE);
+    }
+
+    /**
+     * @throws IOException if the buffer does not start with a header of this format
+     */
+    static void checkHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+            throw new IOException("not an audit log file");
+        }
+        if (buffer.getInt(8) != FORMAT_VERSION || buffer.getInt(12) != RECORD_SIZE) {
+            throw new IOException("unsupported audit log format " + buffer.getInt(8));
+        }
+    }
+
+    static void writeRecord(ByteBuffer buffer, int offset, AuditEventType type, long timestampMillis, long memberId,
+                            long version, int count) {
+        buffer.putLong(offset, timestampMillis);
+        buffer.putLong(offset + 8, memberId);
+        buffer.putLong(offset + 16, version);
+        buffer.putInt(offset + 28, count);
+        // the type goes last: a reader that finds it set finds the rest of the record written too
+        buffer.putInt(offset + 24, (type.getCode() & 0xFF) << 24);
+    }
+
+    /**
+     * @return the record at the given offset, or null at the end of the data
+     */
+    static AuditRecord readRecord(ByteBuffer buffer, int offset) {
+        AuditEventType type = AuditEventType.fromCode(buffer.get(offset + 24));
+        if (type == null) {
+            return null;
+        }
+        return new AuditRecord(type, buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+            buffer.getInt(offset + 28));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue of audit events for many producers and one consumer, held in arrays that are allocated up front,
+ * so that recording an event allocates nothing and takes no lock.
+ * <p/>
+ * A producer claims the next sequence number with a compare-and-set, fills in the slot that sequence maps to, and then
+ * publishes the slot by storing the sequence in it. The consumer reads slots in sequence order for as long as they are
+ * published, and frees each one by advancing its own position. A full buffer is handled by the
+ * {@link AuditOverflowPolicy}. Once the buffer is {@link #close() closed}, every event is dropped, so no producer waits
+ * for a consumer that is gone.
+ */
+public class AuditRingBuffer {
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final AuditOverflowPolicy overflowPolicy;
+
+    private final byte[] types;
+
+    private final long[] timestamps;
+
+    private final long[] memberIds;
+
+    private final long[] versions;
+
+    /**
+     * The sequence number whose event each slot holds, or -1 before first use.
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * The next sequence number to claim.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The next sequence number to read; only the consumer moves it.
+     */
+    private final AtomicLong consumed = new AtomicLong();
+
+    /**
+     * Events dropped since the consumer last recorded a drop.
+     */
+    private final AtomicLong pendingDrops = new AtomicLong();
+
+    private final AtomicLong totalDrops = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param capacity the number of slots, a power of two
+     */
+    public AuditRingBuffer(int capacity, AuditOverflowPolicy overflowPolicy) {
+        Preconditions.checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "capacity must be a power of two");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy);
+        this.types = new byte[capacity];
+        this.timestamps = new long[capacity];
+        this.memberIds = new long[capacity];
+        this.versions = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Adds an event; safe to call from any number of threads.
+     *
+     * @return false if the event was dropped because the buffer was full or closed
+     */
+    public boolean offer(AuditEventType type, long timestampMillis, long memberId, long version) {
+        long sequence;
+        while (true) {
+            // checked on every round, so that a blocked producer gives up when the buffer is closed
+            if (closed) {
+                return drop();
+            }
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= capacity) {
+                if (overflowPolicy == AuditOverflowPolicy.DROP) {
+                    return drop();
+                }
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int slot = (int) sequence & mask;
+        types[slot] = type.getCode();
+        timestamps[slot] = timestampMillis;
+        memberIds[slot] = memberId;
+        versions[slot] = version;
+        // an ordered store, which makes the slot's fields visible before the sequence that publishes them
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    private boolean drop() {
+        pendingDrops.incrementAndGet();
+        totalDrops.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Drops every event offered from now on, and releases producers waiting for room; call it when the consumer is
+     * about to stop. Events published before are still drained.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Hands every published event to the sink, in order, followed by a {@link AuditEventType#DROPPED} record if events
+     * were dropped since the last drain. Only one thread may drain.
+     *
+     * @return the number of events handed over, not counting a DROPPED record
+     */
+    public int drainTo(AuditSink sink) throws IOException {
+        long next = consumed.get();
+        int drained = 0;
+        while (true) {
+            int slot = (int) next & mask;
+            if (published.get(slot) != next) {
+                break;
+            }
+            sink.write(AuditEventType.fromCode(types[slot]), timestamps[slot], memberIds[slot], versions[slot], 0);
+            next++;
+            drained++;
+            // frees the slot for producers
+            consumed.lazySet(next);
+        }
+        long dropped = pendingDrops.getAndSet(0);
+        if (dropped > 0) {
+            int count = (int) Math.min(dropped, Integer.MAX_VALUE);
+            sink.write(AuditEventType.DROPPED, System.currentTimeMillis(), 0, 0, count);
+        }
+        return drained;
+    }
+
+    /**
+     * @return the number of events waiting to be drained
+     */
+    public long size() {
+        return Math.max(0, claimed.get() - consumed.get());
+    }
+
+    /**
+     * @return the number of events dropped since the buffer was created, because it was full or closed
+     */
+    public long getDropCount() {
+        return totalDrops.get();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.audit;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.service.Registered;
+import org.jboss.as.quickstarts.kitchensink.service.Updated;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The audit log of member mutations: every committed registration and update is recorded as a fixed-size binary
+ * record (see {@link AuditRecordFormat}) in rolling memory-mapped files, which {@link AuditLogReader} reads back.
+ * <p/>
+ * Recording only puts the event in an {@link AuditRingBuffer}, so the committing thread neither formats text nor
+ * takes a lock; a background thread drains the buffer to the files. It is configured by system properties:
+ * <ul>
+ * <li>{@code kitchensink.audit.dir}: the directory, by default {@code kitchensink-audit} in the server's log
+ * directory</li>
+ * <li>{@code kitchensink.audit.bufferSize}: the ring buffer's capacity, a power of two (default 8192)</li>
+ * <li>{@code kitchensink.audit.overflow}: {@code DROP} (the default) or {@code BLOCK}; see
+ * {@link AuditOverflowPolicy}</li>
+ * <li>{@code kitchensink.audit.fileRecords}: records per file (default 131072, 4 MiB)</li>
+ * <li>{@code kitchensink.audit.maxFiles}: the number of files kept (default 16)</li>
+ * </ul>
+ * If the directory cannot be written, auditing is off and a warning is logged.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MemberAuditLog {
+
+    static final int BUFFER_SIZE = Integer.getInteger("kitchensink.audit.bufferSize", 8192);
+
+    static final int FILE_RECORDS = Integer.getInteger("kitchensink.audit.fileRecords", 128 * 1024);
+
+    static final int MAX_FILES = Integer.getInteger("kitchensink.audit.maxFiles", 16);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private static final AuditSink DISCARD = new AuditSink() {
+        @Override
+        public void write(AuditEventType type, long timestampMillis, long memberId, long version, int count) {
+        }
+    };
+
+    @Inject
+    private Logger log;
+
+    private AuditRingBuffer ringBuffer;
+
+    private AuditFileWriter fileWriter;
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    private volatile boolean failed;
+
+    @PostConstruct
+    void start() {
+        File directory = directory();
+        try {
+            fileWriter = new AuditFileWriter(log, directory, FILE_RECORDS, MAX_FILES);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "cannot write the member audit log to " + directory + "; auditing is off", e);
+            return;
+        }
+        ringBuffer = new AuditRingBuffer(BUFFER_SIZE, overflowPolicy());
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainUntilStopped();
+            }
+        }, "kitchensink-audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("writing the member audit log to " + directory);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (writerThread == null) {
+            return;
+        }
+        // nothing drains the buffer after the last round, so producers must not wait for room any more
+        ringBuffer.close();
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void onRegistered(@Observes(during = TransactionPhase.AFTER_SUCCESS) @Registered Member member) {
+        record(AuditEventType.REGISTERED, member);
+    }
+
+    public void onUpdated(@Observes(during = TransactionPhase.AFTER_SUCCESS) @Updated Member member) {
+        record(AuditEventType.UPDATED, member);
+    }
+
+    private void record(AuditEventType type, Member member) {
+        if (ringBuffer != null) {
+            long version = member.getVersion() == null ? 0 : member.getVersion();
+            ringBuffer.offer(type, System.currentTimeMillis(), member.getId(), version);
+        }
+    }
+
+    public boolean isEnabled() {
+        return ringBuffer != null && !failed;
+    }
+
+    public long getRecordsWritten() {
+        return fileWriter == null ? 0 : fileWriter.getRecordsWritten();
+    }
+
+    /**
+     * @return the number of events lost because the ring buffer was full, or the log had stopped
+     */
+    public long getDropCount() {
+        return ringBuffer == null ? 0 : ringBuffer.getDropCount();
+    }
+
+    /**
+     * @return the number of events waiting to be written
+     */
+    public long getPendingCount() {
+        return ringBuffer == null ? 0 : ringBuffer.size();
+    }
+
+    private void drainUntilStopped() {
+        AuditSink sink = fileWriter;
+        while (true) {
+            // read the flag first, so that the last drain sees everything recorded before stop()
+            boolean stopping = !running;
+            int drained;
+            try {
+                drained = ringBuffer.drainTo(sink);
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "cannot write the member audit log; auditing is off", e);
+                failed = true;
+                // keep draining, so that callers are not blocked by a full buffer
+                sink = DISCARD;
+                continue;
+            }
+            if (stopping) {
+                break;
+            }
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        try {
+            fileWriter.close();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "cannot close the member audit log", e);
+        }
+    }
+
+    private AuditOverflowPolicy overflowPolicy() {
+        String policy = System.getProperty("kitchensink.audit.overflow", AuditOverflowPolicy.DROP.name());
+        try {
+            return AuditOverflowPolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warning("unknown kitchensink.audit.overflow '" + policy + "'; using DROP");
+            return AuditOverflowPolicy.DROP;
+        }
+    }
+
+    private static File directory() {
+        String directory = System.getProperty("kitchensink.audit.dir");
+        if (directory != null) {
+            return new File(directory);
+        }
+        String logDirectory = System.getProperty("jboss.server.log.dir", System.getProperty("java.io.tmpdir"));
+        return new File(logDirectory, "kitchensink-audit");
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.data;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.io.BaseEncoding;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+/**
+ * A position in a member listing: the sort key value and id of the last member on a page. The next page starts
+ * strictly after this position.
+ * <p/>
+ * Clients only ever see the {@link #encode() encoded} form, so the format is free to change.
+ */
+public class MemberCursor {
+
+    private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+    private static final char SEPARATOR = ':';
+
+    private final MemberSortKey sortKey;
+
+    private final String value;
+
+    private final long id;
+
+    public MemberCursor(MemberSortKey sortKey, String value, long id) {
+        this.sortKey = Preconditions.checkNotNull(sortKey);
+        this.value = Preconditions.checkNotNull(value);
+        this.id = id;
+    }
+
+    public static MemberCursor after(MemberSortKey sortKey, Member member) {
+        return new MemberCursor(sortKey, sortKey.valueOf(member), member.getId());
+    }
+
+    public MemberSortKey getSortKey() {
+        return sortKey;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String encode() {
+        String plain = sortKey.getAttribute() + SEPARATOR + id + SEPARATOR + value;
+        return ENCODING.encode(plain.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given text was not produced by {@link #encode()}
+     */
+    public static MemberCursor decode(String encoded) {
+        String plain;
+        try {
+            plain = new String(ENCODING.decode(encoded), Charsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+        int first = plain.indexOf(SEPARATOR);
+        int second = plain.indexOf(SEPARATOR, first + 1);
+        if (first < 0 || second < 0) {
+            throw new IllegalArgumentException("malformed cursor");
+        }
+        MemberSortKey sortKey = MemberSortKey.fromAttribute(plain.substring(0, first));
+        long id;
+        try {
+            id = Long.parseLong(plain.substring(first + 1, second));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+        return new MemberCursor(sortKey, plain.substring(second + 1), id);
+    }
+
+    @Override
+    public String toString() {
+        return sortKey.getAttribute() + " after (" + value + ", " + id + ")";
+    }
+}
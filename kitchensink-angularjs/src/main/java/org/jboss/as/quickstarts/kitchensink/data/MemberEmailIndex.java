@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.data;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+/**
+ * An in-memory index from email to member id, so the email uniqueness check on each write rarely needs a query.
+ * <p/>
+ * A Bloom filter sits in front of the map: a negative answer from it is definite, which is the common case of a new
+ * email. The index only knows about changes committed through this application instance, so it is rebuilt from the
+ * database every hour, which also resizes the Bloom filter as the table grows. The unique constraint on
+ * {@code Member.email} remains the final safeguard.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MemberEmailIndex {
+
+    private static final int MIN_EXPECTED_EMAILS = 10000;
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private MemberRepository repository;
+
+    private volatile State state = new State(MIN_EXPECTED_EMAILS);
+
+    // changes committed while a rebuild is querying, to be replayed onto the rebuilt state; guarded by this
+    private List<Member> changesDuringRebuild;
+
+    /**
+     * @return false only if no member has the given email (as far as this instance knows)
+     */
+    public boolean mightContain(String email) {
+        return state.mightContain(email);
+    }
+
+    /**
+     * @return the id of the member with the given email, or null if the index does not know of one
+     */
+    public Long findId(String email) {
+        return state.idsByEmail.get(email);
+    }
+
+    public void onMemberChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) final Member member) {
+        synchronized (this) {
+            state.index(member.getId(), member.getEmail());
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(member);
+            }
+        }
+    }
+
+    @PostConstruct
+    @Schedule(hour = "*", minute = "17", persistent = false)
+    public void rebuild() {
+        synchronized (this) {
+            changesDuringRebuild = new ArrayList<Member>();
+        }
+        State rebuilt = null;
+        try {
+            List<Map<String, Object>> rows = repository.findPageProjected(
+                EnumSet.of(MemberField.ID, MemberField.EMAIL), MemberSortKey.ID, null, null);
+            rebuilt = new State(Math.max(MIN_EXPECTED_EMAILS, rows.size() * 2));
+            for (Map<String, Object> row : rows) {
+                rebuilt.index(
+                    (Long) row.get(MemberField.ID.getAttribute()),
+                    (String) row.get(MemberField.EMAIL.getAttribute()));
+            }
+        } finally {
+            synchronized (this) {
+                List<Member> changes = changesDuringRebuild;
+                changesDuringRebuild = null;
+                if (rebuilt != null) {
+                    for (Member member : changes) {
+                        rebuilt.index(member.getId(), member.getEmail());
+                    }
+                    state = rebuilt;
+                }
+            }
+        }
+        log.fine("email index rebuilt with " + rebuilt.idsByEmail.size() + " emails");
+    }
+
+    private static class State {
+
+        // BloomFilter is not thread safe: lookups may share it, but a put needs it to itself
+        private final BloomFilter<CharSequence> emails;
+
+        private final ReadWriteLock emailsLock = new ReentrantReadWriteLock();
+
+        final ConcurrentMap<String, Long> idsByEmail = new ConcurrentHashMap<String, Long>();
+
+        final ConcurrentMap<Long, String> emailsById = new ConcurrentHashMap<Long, String>();
+
+        State(int expectedEmails) {
+            emails = BloomFilter.create(Funnels.stringFunnel(), expectedEmails, FALSE_POSITIVE_PROBABILITY);
+        }
+
+        boolean mightContain(String email) {
+            emailsLock.readLock().lock();
+            try {
+                return emails.mightContain(email);
+            } finally {
+                emailsLock.readLock().unlock();
+            }
+        }
+
+        // callers serialize writes, so the two maps stay consistent with each other
+        void index(Long id, String email) {
+            String previousEmail = emailsById.put(id, email);
+            if (previousEmail != null && !previousEmail.equals(email)) {
+                // a Bloom filter cannot forget the old email; it just becomes a false positive
+                idsByEmail.remove(previousEmail, id);
+            }
+            idsByEmail.put(email, id);
+            emailsLock.writeLock().lock();
+            try {
+                emails.put(email);
+            } finally {
+                emailsLock.writeLock().unlock();
+            }
+        }
+    }
+}
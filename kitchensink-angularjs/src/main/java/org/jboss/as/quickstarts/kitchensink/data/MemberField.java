@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.data;
+
+import com.google.common.base.Objects;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The attributes of a member that can be selected individually, for example by a {@code fields} query parameter.
+ */
+public enum MemberField {
+
+    ID("id"),
+    NAME("name"),
+    EMAIL("email"),
+    PHONE_NUMBER("phoneNumber");
+
+    private final String attribute;
+
+    private MemberField(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * @return the value of this attribute for the given member
+     */
+    public Object valueOf(Member member) {
+        switch (this) {
+            case ID:
+                return member.getId();
+            case NAME:
+                return member.getName();
+            case EMAIL:
+                return member.getEmail();
+            default:
+                return member.getPhoneNumber();
+        }
+    }
+
+    /**
+     * @return the attributes whose values differ between the two members
+     */
+    public static Set<MemberField> changedBetween(Member before, Member after) {
+        Set<MemberField> changed = EnumSet.noneOf(MemberField.class);
+        for (MemberField field : values()) {
+            if (!Objects.equal(field.valueOf(before), field.valueOf(after))) {
+                changed.add(field);
+            }
+        }
+        return changed;
+    }
+
+    public static MemberField fromAttribute(String attribute) {
+        for (MemberField field : values()) {
+            if (field.attribute.equals(attribute)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("members have no field '" + attribute + "'");
+    }
+
+    public static MemberField of(MemberSortKey sortKey) {
+        return fromAttribute(sortKey.getAttribute());
+    }
+
+    /**
+     * Parses a comma separated list of attribute names, such as "id,name".
+     *
+     * @throws IllegalArgumentException if the list is empty or names an unknown attribute
+     */
+    public static Set<MemberField> parseList(String attributes) {
+        Set<MemberField> fields = EnumSet.noneOf(MemberField.class);
+        for (String attribute : attributes.split(",")) {
+            if (attribute.trim().length() > 0) {
+                fields.add(fromAttribute(attribute.trim()));
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("at least one field must be given");
+        }
+        return fields;
+    }
+}
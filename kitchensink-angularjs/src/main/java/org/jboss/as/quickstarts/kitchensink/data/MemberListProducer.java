@@ -17,38 +17,165 @@
 package org.jboss.as.quickstarts.kitchensink.data;
 
 import javax.annotation.PostConstruct;
-import javax.enterprise.context.RequestScoped;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
 import javax.enterprise.event.Observes;
-import javax.enterprise.event.Reception;
+import javax.enterprise.event.TransactionPhase;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
 
 import org.jboss.as.quickstarts.kitchensink.model.Member;
 
-@RequestScoped
+/**
+ * Produces the list of all members ordered by name, shared by the whole application.
+ * <p/>
+ * The members are held in a skip list sorted by (name, id), loaded once at startup and patched in place from each
+ * committed member change, so neither a request nor a registration scans the table. The list only knows about
+ * changes committed through this application instance, so it is reconciled with the database every quarter hour.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class MemberListProducer {
 
+    @Inject
+    private Logger log;
+
     @Inject
     private MemberRepository memberRepository;
 
-    private List<Member> members;
+    private volatile State state = new State();
+
+    // changes committed while a reconciliation is querying, to be replayed onto its result; guarded by this
+    private List<Member> changesDuringReconcile;
+
+    // the list last handed out, or null if the members have changed since; guarded by this for writes
+    private volatile List<Member> members;
+
+    // incremented on every change, so a list copied before a change is not published after it; guarded by this
+    private long version;
 
     // @Named provides access the return value via the EL variable name "members" in the UI (e.g.
     // Facelets or JSP view)
     @Produces
     @Named
     public List<Member> getMembers() {
-        return members;
+        List<Member> current = members;
+        if (current != null) {
+            return current;
+        }
+        long copiedVersion;
+        synchronized (this) {
+            copiedVersion = version;
+        }
+        current = Collections.unmodifiableList(new ArrayList<Member>(state.byNameAndId.values()));
+        synchronized (this) {
+            if (version == copiedVersion) {
+                members = current;
+            }
+        }
+        return current;
     }
 
-    public void onMemberListChanged(@Observes(notifyObserver = Reception.IF_EXISTS) final Member member) {
-        retrieveAllMembersOrderedByName();
+    public void onMemberListChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) final Member member) {
+        Member copy = new Member();
+        copy.setId(member.getId());
+        copy.setName(member.getName());
+        copy.setEmail(member.getEmail());
+        copy.setPhoneNumber(member.getPhoneNumber());
+        copy.setVersion(member.getVersion());
+        synchronized (this) {
+            state.put(copy);
+            if (changesDuringReconcile != null) {
+                changesDuringReconcile.add(copy);
+            }
+            changed();
+        }
     }
 
     @PostConstruct
-    public void retrieveAllMembersOrderedByName() {
-        members = memberRepository.findAllOrderedByName();
+    @Schedule(hour = "*", minute = "*/15", persistent = false)
+    public void reconcile() {
+        synchronized (this) {
+            changesDuringReconcile = new ArrayList<Member>();
+        }
+        State reconciled = null;
+        try {
+            List<Member> members = memberRepository.findAllOrderedByName();
+            // only a complete state may replace the shared one, so a failed query leaves the list as it was
+            State filled = new State();
+            for (Member member : members) {
+                filled.put(member);
+            }
+            reconciled = filled;
+        } finally {
+            synchronized (this) {
+                List<Member> changes = changesDuringReconcile;
+                changesDuringReconcile = null;
+                if (reconciled != null) {
+                    for (Member member : changes) {
+                        reconciled.put(member);
+                    }
+                    state = reconciled;
+                    changed();
+                }
+            }
+        }
+        log.fine("member list reconciled with " + reconciled.keysById.size() + " members");
+    }
+
+    // callers hold the lock
+    private void changed() {
+        version++;
+        members = null;
+    }
+
+    private static class State {
+
+        final ConcurrentSkipListMap<Key, Member> byNameAndId = new ConcurrentSkipListMap<Key, Member>();
+
+        final ConcurrentMap<Long, Key> keysById = new ConcurrentHashMap<Long, Key>();
+
+        // callers serialize writes, which keeps the two maps in step
+        void put(Member member) {
+            Key key = new Key(member.getName(), member.getId());
+            Key previous = keysById.put(member.getId(), key);
+            if (previous != null && previous.compareTo(key) != 0) {
+                byNameAndId.remove(previous);
+            }
+            byNameAndId.put(key, member);
+        }
+    }
+
+    private static class Key implements Comparable<Key> {
+
+        final String name;
+
+        final long id;
+
+        Key(String name, long id) {
+            this.name = name == null ? "" : name;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byName = name.compareTo(other.name);
+            if (byName != 0) {
+                return byName;
+            }
+            return id < other.id ? -1 : (id == other.id ? 0 : 1);
+        }
     }
 }
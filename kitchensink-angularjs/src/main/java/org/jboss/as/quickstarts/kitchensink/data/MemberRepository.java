@@ -19,16 +19,34 @@ package org.jboss.as.quickstarts.kitchensink.data;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.hibernate.CacheMode;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.jboss.as.quickstarts.kitchensink.model.Member;
 
 @ApplicationScoped
 public class MemberRepository {
 
+    private static final String CACHEABLE = "org.hibernate.cacheable";
+
     @Inject
     private EntityManager em;
 
@@ -36,14 +54,34 @@ public class MemberRepository {
         return em.find(Member.class, id);
     }
 
-    public Member findByEmail(String email) {
+    /**
+     * Loads the members with the given ids in one query; ids without a member are left out.
+     */
+    public List<Member> findByIds(Collection<Long> ids) {
         CriteriaBuilder cb = em.getCriteriaBuilder();
         CriteriaQuery<Member> criteria = cb.createQuery(Member.class);
         Root<Member> member = criteria.from(Member.class);
-        // Swap criteria statements if you would like to try out type-safe criteria queries, a new
-        // feature in JPA 2.0
-        // criteria.select(member).where(cb.equal(member.get(Member_.email), email));
-        criteria.select(member).where(cb.equal(member.get("email"), email));
+        criteria.select(member).where(member.get("id").in(ids));
+        return em.createQuery(criteria).getResultList();
+    }
+
+    /**
+     * Looks a member up by its email, which is its natural id, so the answer usually comes from the natural id cache.
+     *
+     * @throws NoResultException if no member has the given email
+     */
+    public Member findByEmail(String email) {
+        Member member = (Member) em.unwrap(Session.class).bySimpleNaturalId(Member.class).load(email);
+        if (member == null) {
+            throw new NoResultException("no member has the email " + email);
+        }
+        return member;
+    }
+
+    public long countAll() {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Long> criteria = cb.createQuery(Long.class);
+        criteria.select(cb.count(criteria.from(Member.class)));
         return em.createQuery(criteria).getSingleResult();
     }
 
@@ -55,6 +93,135 @@ public class MemberRepository {
         // feature in JPA 2.0
         // criteria.select(member).orderBy(cb.asc(member.get(Member_.name)));
         criteria.select(member).orderBy(cb.asc(member.get("name")));
-        return em.createQuery(criteria).getResultList();
+        // the query cache holds the ids, which it drops on any write to the table; the members come from their cache
+        return em.createQuery(criteria).setHint(CACHEABLE, true).getResultList();
+    }
+
+    /**
+     * Returns one page of members using keyset pagination: the page starts right after the given cursor (or at the
+     * beginning when it is null), so the database can seek into the (key, id) index instead of counting past skipped
+     * rows, and each page costs the same however deep into the listing it is.
+     *
+     * @param maxResults the page size, or null for no bound
+     */
+    public List<Member> findPage(MemberSortKey sortKey, MemberCursor after, Integer maxResults) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Member> criteria = cb.createQuery(Member.class);
+        Root<Member> member = criteria.from(Member.class);
+        criteria.select(member);
+        restrictToPage(cb, criteria, member, sortKey, after);
+        return limit(em.createQuery(criteria), maxResults).getResultList();
+    }
+
+    /**
+     * Like {@link #findPage(MemberSortKey, MemberCursor, Integer)}, but only reads the given fields. Each member is
+     * returned as a map from attribute name to value, in {@link MemberField} order; as no entities are loaded, the
+     * persistence context is bypassed entirely.
+     */
+    public List<Map<String, Object>> findPageProjected(
+            Set<MemberField> fields,
+            MemberSortKey sortKey,
+            MemberCursor after,
+            Integer maxResults) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = cb.createTupleQuery();
+        Root<Member> member = criteria.from(Member.class);
+        criteria.multiselect(selections(member, fields));
+        restrictToPage(cb, criteria, member, sortKey, after);
+        return toMaps(limit(em.createQuery(criteria), maxResults).getResultList(), fields);
+    }
+
+    /**
+     * @return the given fields of the member with the given id, or null if there is no such member
+     */
+    public Map<String, Object> findProjectedById(Set<MemberField> fields, long id) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = cb.createTupleQuery();
+        Root<Member> member = criteria.from(Member.class);
+        criteria.multiselect(selections(member, fields)).where(cb.equal(member.get("id"), id));
+        List<Map<String, Object>> rows = toMaps(em.createQuery(criteria).getResultList(), fields);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private void restrictToPage(
+            CriteriaBuilder cb,
+            CriteriaQuery<?> criteria,
+            Root<Member> member,
+            MemberSortKey sortKey,
+            MemberCursor after) {
+        Path<Long> id = member.get("id");
+        if (sortKey == MemberSortKey.ID) {
+            if (after != null) {
+                criteria.where(cb.greaterThan(id, after.getId()));
+            }
+            criteria.orderBy(cb.asc(id));
+        } else {
+            Path<String> key = member.get(sortKey.getAttribute());
+            if (after != null) {
+                criteria.where(cb.or(
+                    cb.greaterThan(key, after.getValue()),
+                    cb.and(cb.equal(key, after.getValue()), cb.greaterThan(id, after.getId()))));
+            }
+            criteria.orderBy(cb.asc(key), cb.asc(id));
+        }
+    }
+
+    private <T> TypedQuery<T> limit(TypedQuery<T> query, Integer maxResults) {
+        if (maxResults != null) {
+            query.setMaxResults(maxResults);
+        }
+        return query;
+    }
+
+    private List<Selection<?>> selections(Root<Member> member, Set<MemberField> fields) {
+        List<Selection<?>> selections = new ArrayList<Selection<?>>(fields.size());
+        for (MemberField field : fields) {
+            selections.add(member.get(field.getAttribute()).alias(field.getAttribute()));
+        }
+        return selections;
+    }
+
+    private List<Map<String, Object>> toMaps(List<Tuple> tuples, Set<MemberField> fields) {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<String, Object>();
+            for (MemberField field : fields) {
+                row.put(field.getAttribute(), tuple.get(field.getAttribute()));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Scans all members ordered by the given sort key through a forward-only database cursor, handing each one to the
+     * callback as it is read. The persistence context is cleared every {@code fetchSize} rows, so memory use is bounded by the
+     * fetch size rather than by the table size.
+     * <p/>
+     * Must be called within a transaction, as the cursor lives only as long as the persistence context.
+     */
+    public void scrollAll(MemberSortKey sortKey, int fetchSize, MemberCallback callback) throws IOException {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Member> criteria = cb.createQuery(Member.class);
+        Root<Member> member = criteria.from(Member.class);
+        criteria.select(member);
+        restrictToPage(cb, criteria, member, sortKey, null);
+        ScrollableResults results = em.createQuery(criteria)
+            .unwrap(Query.class)
+            .setReadOnly(true)
+            .setFetchSize(fetchSize)
+            .setCacheMode(CacheMode.IGNORE)
+            .scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            int count = 0;
+            while (results.next()) {
+                callback.handle((Member) results.get(0));
+                if (++count % fetchSize == 0) {
+                    em.clear();
+                }
+            }
+        } finally {
+            results.close();
+        }
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.data;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+/**
+ * An in-memory prefix index over member names and emails, for typeahead search.
+ * <p/>
+ * Every indexed term is normalized (lower case, accents removed) and stored as a key in a sorted map, followed by the
+ * id of its member, so all the terms starting with a prefix form one contiguous range of keys. The index is loaded
+ * once at startup and then kept current from committed member changes, so searches never reach the database.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MemberSearchIndex {
+
+    // sorts before any character a term can contain, so "jo" + SEPARATOR + id sorts before "john" + SEPARATOR + id
+    private static final char SEPARATOR = '\u0000';
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private MemberRepository repository;
+
+    private final NavigableMap<String, Long> terms = new ConcurrentSkipListMap<String, Long>();
+
+    // copies of the indexed members, which are both the search results and the record of what to unindex on change
+    private final ConcurrentMap<Long, Member> members = new ConcurrentHashMap<Long, Member>();
+
+    @PostConstruct
+    void loadAllMembers() {
+        for (Member member : repository.findPage(MemberSortKey.ID, null, null)) {
+            index(copyOf(member));
+        }
+        log.info("indexed " + members.size() + " members for search");
+    }
+
+    public void onMemberChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) final Member member) {
+        index(copyOf(member));
+    }
+
+    private static Member copyOf(Member member) {
+        Member copy = new Member();
+        copy.setId(member.getId());
+        copy.setName(member.getName());
+        copy.setEmail(member.getEmail());
+        copy.setPhoneNumber(member.getPhoneNumber());
+        copy.setVersion(member.getVersion());
+        return copy;
+    }
+
+    /**
+     * @return up to {@code maxResults} members with a name word, their whole name or their email starting with the
+     *         given prefix, ordered by the matching term
+     */
+    public List<Member> search(String prefix, int maxResults) {
+        String normalized = normalize(prefix);
+        Set<Long> ids = new LinkedHashSet<Long>();
+        for (Long id : terms.subMap(normalized, true, normalized + Character.MAX_VALUE, false).values()) {
+            if (ids.add(id) && ids.size() == maxResults) {
+                break;
+            }
+        }
+        List<Member> results = new ArrayList<Member>(ids.size());
+        for (Long id : ids) {
+            Member member = members.get(id);
+            // may have been re-indexed since we read its term
+            if (member != null) {
+                results.add(member);
+            }
+        }
+        return results;
+    }
+
+    // writes are rare, and serializing them keeps the terms of a member in step with its stored copy
+    private synchronized void index(Member member) {
+        Member previous = members.get(member.getId());
+        if (previous != null && isOlder(member, previous)) {
+            // observers of two commits may run in either order, and nothing would correct an older state later
+            return;
+        }
+        members.put(member.getId(), member);
+        if (previous != null) {
+            for (String term : termsOf(previous)) {
+                terms.remove(key(term, previous.getId()));
+            }
+        }
+        for (String term : termsOf(member)) {
+            terms.put(key(term, member.getId()), member.getId());
+        }
+    }
+
+    private static boolean isOlder(Member member, Member than) {
+        return member.getVersion() != null && than.getVersion() != null && member.getVersion() < than.getVersion();
+    }
+
+    private static String key(String term, Long id) {
+        return term + SEPARATOR + id;
+    }
+
+    private static Set<String> termsOf(Member member) {
+        Set<String> result = new LinkedHashSet<String>();
+        if (member.getName() != null) {
+            String name = normalize(member.getName());
+            result.add(name);
+            for (String word : WHITESPACE.split(name)) {
+                if (word.length() > 0) {
+                    result.add(word);
+                }
+            }
+        }
+        if (member.getEmail() != null) {
+            result.add(normalize(member.getEmail()));
+        }
+        return result;
+    }
+
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text.trim(), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ENGLISH);
+    }
+}
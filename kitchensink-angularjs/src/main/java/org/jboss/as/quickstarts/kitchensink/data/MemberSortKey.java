@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.data;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+/**
+ * The columns a member listing can be ordered by. Every ordering is made total by using the id as a tie-breaker, so a
+ * (key, id) pair identifies a position in the listing, and each ordering is backed by an index (see import.sql).
+ */
+public enum MemberSortKey {
+
+    NAME("name"),
+    EMAIL("email"),
+    ID("id");
+
+    private final String attribute;
+
+    private MemberSortKey(String attribute) {
+        this.attribute = attribute;
+    }
+
+    /**
+     * @return the name of the {@link Member} attribute, which is also the query parameter value for this key
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * @return the value of this key for the given member, as it is stored in a {@link MemberCursor}
+     */
+    public String valueOf(Member member) {
+        switch (this) {
+            case NAME:
+                return member.getName();
+            case EMAIL:
+                return member.getEmail();
+            default:
+                return String.valueOf(member.getId());
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no sort key with the given attribute name
+     */
+    public static MemberSortKey fromAttribute(String attribute) {
+        for (MemberSortKey key : values()) {
+            if (key.attribute.equals(attribute)) {
+                return key;
+            }
+        }
+        throw new IllegalArgumentException("cannot sort members by '" + attribute + "'");
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.data;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.ws.rs.core.EntityTag;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.CacheBuilder;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+/**
+ * Keeps version numbers for the member list and for each member, so that conditional GETs can be answered without
+ * touching the database.
+ * <p/>
+ * The list has a single counter, which moves whenever a member is registered or updated. It is only meaningful within
+ * this running instance, so the list's entity tag also carries an epoch taken at startup. A member's entity tag is
+ * built from its persistent {@link Member#getVersion() version}, so it is also the tag that {@code If-Match} is checked
+ * against; the last version seen of each member is remembered here. Only the most recently used
+ * {@code kitchensink.memberVersions.maxEntries} members are kept, and a forgotten member costs its next conditional
+ * GET one database read.
+ */
+@ApplicationScoped
+public class MemberVersionTracker {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private final AtomicLong listVersion = new AtomicLong();
+
+    static final long MAX_ENTRIES = Long.getLong("kitchensink.memberVersions.maxEntries", 100000);
+
+    private final ConcurrentMap<Long, Long> memberVersions = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .<Long, Long>build()
+        .asMap();
+
+    /**
+     * Only committed changes move the versions; otherwise a client could cache data from a transaction that is then
+     * rolled back.
+     */
+    public void onMemberChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) final Member member) {
+        listVersion.incrementAndGet();
+        remember(member.getId(), member.getVersion());
+    }
+
+    /**
+     * Callers that go on to query the list should take the tag first: if a change commits in between, the response
+     * is tagged with the older version, and the client simply fetches again next time.
+     */
+    public EntityTag listTag() {
+        return new EntityTag(epoch + "-" + listVersion.get());
+    }
+
+    /**
+     * @return the tag of the given member's latest version seen, or null if it has not been seen since startup
+     */
+    public EntityTag memberTag(long id) {
+        Long version = memberVersions.get(id);
+        return version == null ? null : tagOf(id, version);
+    }
+
+    /**
+     * @return the tag of the given member, which is remembered unless a later version has been seen
+     */
+    public EntityTag memberTag(Member member) {
+        remember(member.getId(), member.getVersion());
+        return tagOf(member.getId(), member.getVersion());
+    }
+
+    private static EntityTag tagOf(long id, long version) {
+        return new EntityTag(id + "-" + version);
+    }
+
+    // versions only move forward, so a slow reader must not replace a newer version with the one it loaded
+    private void remember(Long id, Long version) {
+        Long previous = memberVersions.putIfAbsent(id, version);
+        while (previous != null && previous < version && !memberVersions.replace(id, previous, version)) {
+            previous = memberVersions.get(id);
+        }
+    }
+}
@@ -18,29 +18,52 @@ package org.jboss.as.quickstarts.kitchensink.model;
 
 import java.io.Serializable;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 import javax.validation.constraints.Digits;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
 import javax.validation.constraints.Size;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.hibernate.validator.constraints.Email;
 import org.hibernate.validator.constraints.NotEmpty;
 
+/**
+ * A registered member. Members are held in the second-level cache (see persistence.xml for its eviction settings),
+ * and the unique email is a natural id, so a lookup by email can be answered from the natural id cache. Updates are
+ * dynamic: an UPDATE only sets the columns whose values changed.
+ */
 @SuppressWarnings("serial")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+@NaturalIdCache
+@DynamicUpdate
 @XmlRootElement
 @Table(uniqueConstraints = @UniqueConstraint(columnNames = "email"))
 public class Member implements Serializable {
 
+    /**
+     * Ids come from a pooled sequence: each trip to the sequence reserves a block of {@code allocationSize} ids, which
+     * are then handed out in memory, and inserts can be batched. The sequence starts at 1, above the seed member's 0.
+     */
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_id")
+    @SequenceGenerator(name = "member_id", sequenceName = "member_id_seq", initialValue = 1, allocationSize = 50)
     private Long id;
 
     @NotNull
@@ -51,6 +74,7 @@ public class Member implements Serializable {
     @NotNull
     @NotEmpty
     @Email
+    @NaturalId(mutable = true)
     private String email;
 
     @NotNull
@@ -59,6 +83,13 @@ public class Member implements Serializable {
     @Column(name = "phone_number")
     private String phoneNumber;
 
+    /**
+     * Incremented by every update, which only succeeds if the row still has the version that was loaded, so
+     * concurrent edits are detected instead of overwriting each other. It is exposed as the member's ETag.
+     */
+    @Version
+    private Long version;
+
     public Long getId() {
         return id;
     }
@@ -90,4 +121,12 @@ public class Member implements Serializable {
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
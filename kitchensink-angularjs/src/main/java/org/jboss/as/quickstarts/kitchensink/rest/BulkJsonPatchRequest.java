@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * JSON Patches for many members, in one of two forms:
+ * <ul>
+ * <li>an object mapping member ids to patches: {@code {"1": [...], "2": [...]}}</li>
+ * <li>one patch for a list of members: {@code {"ids": [1, 2], "patch": [...]}}</li>
+ * </ul>
+ */
+public class BulkJsonPatchRequest {
+
+    private final Map<Long, JsonPatchRequest> patches;
+
+    public BulkJsonPatchRequest(Logger log, ObjectMapper mapper, JsonNode body) {
+        if (body == null || !body.isObject()) {
+            throw badBulkPatchException("expected an object, not " + body);
+        }
+        Map<Long, JsonPatchRequest> patches = new LinkedHashMap<Long, JsonPatchRequest>();
+        if (body.has("ids") && body.has("patch")) {
+            if (!body.get("ids").isArray()) {
+                throw badBulkPatchException("'ids' must be an array");
+            }
+            JsonPatchRequest patch = new JsonPatchRequest(log, mapper, body.get("patch"));
+            for (JsonNode id : body.get("ids")) {
+                if (!id.canConvertToLong()) {
+                    throw badBulkPatchException("not a member id: " + id);
+                }
+                patches.put(id.asLong(), patch);
+            }
+        } else {
+            Iterator<Map.Entry<String, JsonNode>> fields = body.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                patches.put(parseId(field.getKey()), new JsonPatchRequest(log, mapper, field.getValue()));
+            }
+        }
+        this.patches = Collections.unmodifiableMap(patches);
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw badBulkPatchException("not a member id: " + id);
+        }
+    }
+
+    private static WebApplicationException badBulkPatchException(String message) {
+        return new WebApplicationException(
+            Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity("unable to parse bulk json patch: " + message)
+                .build());
+    }
+
+    /**
+     * @return the patch for each member id, in request order
+     */
+    public Map<Long, JsonPatchRequest> getPatches() {
+        return patches;
+    }
+
+    @Override
+    public String toString() {
+        return patches.toString();
+    }
+}
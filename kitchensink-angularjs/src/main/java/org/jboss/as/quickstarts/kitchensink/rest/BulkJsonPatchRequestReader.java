@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.logging.Logger;
+
+/**
+ * Reads a {@link BulkJsonPatchRequest} from a JSON body, which may be at most
+ * <code>kitchensink.bulkPatch.maxBytes</code> bytes long; a longer one is rejected with 413 before it is held in
+ * memory.
+ */
+@Provider
+@Consumes(MediaType.APPLICATION_JSON)
+public class BulkJsonPatchRequestReader implements MessageBodyReader<BulkJsonPatchRequest> {
+
+    static final long MAX_BYTES = Long.getLong("kitchensink.bulkPatch.maxBytes", 4 * 1024 * 1024);
+
+    ObjectMapper mapper = JsonMapping.shared().getMapper();
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return BulkJsonPatchRequest.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public BulkJsonPatchRequest readFrom(
+            Class<BulkJsonPatchRequest> type,
+            Type genericType,
+            Annotation[] annotations,
+            MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders,
+            InputStream entityStream) throws IOException, WebApplicationException {
+        JsonNode body;
+        try {
+            body = mapper.readTree(
+                JsonPatchRequestReader.boundedBody(httpHeaders, entityStream, MAX_BYTES, "bulk json patch"));
+        } catch (JsonProcessingException e) {
+            throw new WebApplicationException(
+                e,
+                Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("unable to parse bulk json patch: " + e.getMessage())
+                    .build());
+        }
+        return buildBulkJsonPatchRequest(body);
+    }
+
+    // public for testing
+    public BulkJsonPatchRequest buildBulkJsonPatchRequest(JsonNode body) {
+        return new BulkJsonPatchRequest(Logger.getLogger(JsonPatchRequest.class.getName()), mapper, body);
+    }
+}
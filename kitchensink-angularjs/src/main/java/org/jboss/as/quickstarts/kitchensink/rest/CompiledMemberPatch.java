@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A JSON Patch compiled against {@link Member}'s properties, so applying it is a few getter and setter calls on a
+ * copy of the member, instead of a round trip through a JSON tree.
+ * <p/>
+ * Only the common case is compiled: {@code add}, {@code replace}, {@code remove} and {@code test} operations on the
+ * text properties ({@code /name}, {@code /email} and {@code /phoneNumber}) with text or null values. Anything else
+ * is left to {@link JsonPatchRequest}'s tree path, which is also re-run whenever a compiled patch fails, so that
+ * errors are always reported the same way.
+ * <p/>
+ * A JSON Merge Patch for a member only ever sets text properties, so it is always compiled; see
+ * {@link #readMergePatch(JsonParser)}.
+ */
+public class CompiledMemberPatch {
+
+    private enum Property {
+
+        NAME("/name") {
+            @Override
+            String get(Member member) {
+                return member.getName();
+            }
+
+            @Override
+            void set(Member member, String value) {
+                member.setName(value);
+            }
+        },
+        EMAIL("/email") {
+            @Override
+            String get(Member member) {
+                return member.getEmail();
+            }
+
+            @Override
+            void set(Member member, String value) {
+                member.setEmail(value);
+            }
+        },
+        PHONE_NUMBER("/phoneNumber") {
+            @Override
+            String get(Member member) {
+                return member.getPhoneNumber();
+            }
+
+            @Override
+            void set(Member member, String value) {
+                member.setPhoneNumber(value);
+            }
+        };
+
+        private final String path;
+
+        private Property(String path) {
+            this.path = path;
+        }
+
+        abstract String get(Member member);
+
+        abstract void set(Member member, String value);
+
+        static Property atPath(String path) {
+            for (Property property : values()) {
+                if (property.path.equals(path)) {
+                    return property;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Operation {
+
+        final Property property;
+
+        final boolean test;
+
+        final String value;
+
+        Operation(Property property, boolean test, String value) {
+            this.property = property;
+            this.test = test;
+            this.value = value;
+        }
+
+        /**
+         * @return false if this is a test that fails
+         */
+        boolean applyTo(Member member) {
+            if (test) {
+                String current = property.get(member);
+                return value == null ? current == null : value.equals(current);
+            }
+            property.set(member, value);
+            return true;
+        }
+    }
+
+    private final List<Operation> operations;
+
+    private CompiledMemberPatch(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * @param patch a JSON Patch document, already known to be well formed
+     * @return the compiled patch, or null if it uses anything that is not compiled
+     */
+    static CompiledMemberPatch compile(JsonNode patch) {
+        List<Operation> operations = new ArrayList<Operation>(patch.size());
+        // in the tree, a removed property is absent until added again, and only "add" accepts an absent path
+        Set<Property> removed = EnumSet.noneOf(Property.class);
+        for (JsonNode operation : patch) {
+            Property property = Property.atPath(operation.path("path").asText());
+            if (property == null) {
+                return null;
+            }
+            String op = operation.path("op").asText();
+            JsonNode value = operation.get("value");
+            if (removed.contains(property) && !op.equals("add")) {
+                return null;
+            }
+            if (op.equals("remove")) {
+                removed.add(property);
+                operations.add(new Operation(property, false, null));
+            } else if (op.equals("add") || op.equals("replace") || op.equals("test")) {
+                if (value == null || !(value.isTextual() || value.isNull())) {
+                    return null;
+                }
+                removed.remove(property);
+                operations.add(new Operation(property, op.equals("test"), value.isNull() ? null : value.asText()));
+            } else {
+                return null;
+            }
+        }
+        return new CompiledMemberPatch(operations);
+    }
+
+    /**
+     * Reads a JSON Merge Patch (RFC 7386) straight from the given parser, which must be positioned before the patch.
+     * Each field of the patch object sets the member property of the same name, and a null clears it.
+     *
+     * @throws WebApplicationException 400 if the patch is not a json object, or 422 if it names anything but a text
+     * property or gives one a value that is neither text nor null
+     */
+    static CompiledMemberPatch readMergePatch(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw mergePatchException(Response.Status.BAD_REQUEST, "a merge patch for a member must be a json object");
+        }
+        List<Operation> operations = new ArrayList<Operation>(Property.values().length);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            Property property = Property.atPath("/" + name);
+            if (property == null) {
+                throw mergePatchException(new UnprocessableEntityStatusType(),
+                    "member has no property '" + name + "' that can be patched");
+            }
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_STRING) {
+                operations.add(new Operation(property, false, parser.getText()));
+            } else if (value == JsonToken.VALUE_NULL) {
+                operations.add(new Operation(property, false, null));
+            } else {
+                throw mergePatchException(new UnprocessableEntityStatusType(),
+                    "'" + name + "' must be text or null");
+            }
+        }
+        // a malformed object makes the parser throw, so the loop only ends at the closing brace
+        if (parser.nextToken() != null) {
+            throw mergePatchException(Response.Status.BAD_REQUEST, "unexpected content after the merge patch");
+        }
+        return new CompiledMemberPatch(operations);
+    }
+
+    private static WebApplicationException mergePatchException(Response.StatusType status, String message) {
+        return new WebApplicationException(
+            Response
+                .status(status)
+                .entity("unable to apply merge patch: " + message)
+                .build());
+    }
+
+    /**
+     * @return the patched copy of the given member, or null if a test failed
+     */
+    Member apply(Member original) {
+        Member patched = new Member();
+        patched.setId(original.getId());
+        patched.setName(original.getName());
+        patched.setEmail(original.getEmail());
+        patched.setPhoneNumber(original.getPhoneNumber());
+        patched.setVersion(original.getVersion());
+        for (Operation operation : operations) {
+            if (!operation.applyTo(patched)) {
+                return null;
+            }
+        }
+        return patched;
+    }
+}
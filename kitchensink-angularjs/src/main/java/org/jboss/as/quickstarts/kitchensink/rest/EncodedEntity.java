@@ -0,0 +1,30 @@
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A response body that has already been serialized, and possibly compressed, ahead of time. It is written with a
+ * plain byte copy by {@link EncodedEntityWriter}.
+ */
+public class EncodedEntity {
+
+    private final byte[] bytes;
+
+    private final String contentEncoding;
+
+    /**
+     * @param contentEncoding the content coding already applied to the bytes (such as "gzip"), or null for none
+     */
+    public EncodedEntity(byte[] bytes, String contentEncoding) {
+        this.bytes = Preconditions.checkNotNull(bytes);
+        this.contentEncoding = contentEncoding;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+}
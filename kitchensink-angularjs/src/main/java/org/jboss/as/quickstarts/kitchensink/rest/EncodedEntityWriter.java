@@ -0,0 +1,50 @@
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Copies an {@link EncodedEntity} to the response as is.
+ * <p/>
+ * The Content-Encoding header is only added here, rather than on the response by the resource, because RESTEasy's
+ * GZIP encoding interceptor compresses any response that already has {@code Content-Encoding: gzip} when it starts
+ * writing; bytes that were compressed ahead of time would otherwise be compressed a second time.
+ */
+@Provider
+@Produces("*/*")
+public class EncodedEntityWriter implements MessageBodyWriter<EncodedEntity> {
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return EncodedEntity.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(EncodedEntity entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return entity.getBytes().length;
+    }
+
+    @Override
+    public void writeTo(
+            EncodedEntity entity,
+            Class<?> type,
+            Type genericType,
+            Annotation[] annotations,
+            MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders,
+            OutputStream entityStream) throws IOException, WebApplicationException {
+        if (entity.getContentEncoding() != null) {
+            httpHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, entity.getContentEncoding());
+        }
+        entityStream.write(entity.getBytes());
+    }
+}
@@ -7,6 +7,7 @@ import com.github.fge.jackson.JsonLoader;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
 import com.google.common.base.Preconditions;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
@@ -25,16 +26,45 @@ public class JsonPatchRequest {
 
     final JsonPatch jsonPatch;
 
+    /**
+     * The patch compiled for members, or null if it cannot be; see {@link CompiledMemberPatch}.
+     */
+    final CompiledMemberPatch compiledMemberPatch;
+
     public JsonPatchRequest(Logger log, ObjectMapper mapper, String jsonPatchText) {
         Preconditions.checkNotNull(jsonPatchText);
         this.log = log;
         this.mapper = mapper;
-        this.jsonPatch = parseAndBuildPatch(jsonPatchText);
+        JsonNode jsonNode = parseJson(jsonPatchText);
+        this.jsonPatch = buildPatch(jsonNode);
+        this.compiledMemberPatch = CompiledMemberPatch.compile(jsonNode);
+    }
+
+    /**
+     * Builds a request from a patch that has already been parsed, e.g. as part of a {@link BulkJsonPatchRequest}.
+     */
+    JsonPatchRequest(Logger log, ObjectMapper mapper, JsonNode jsonPatchNode) {
+        Preconditions.checkNotNull(jsonPatchNode);
+        this.log = log;
+        this.mapper = mapper;
+        this.jsonPatch = buildPatch(jsonPatchNode);
+        this.compiledMemberPatch = CompiledMemberPatch.compile(jsonPatchNode);
     }
 
     public <T> T apply(T originalEntity) {
         Preconditions.checkNotNull(originalEntity);
 
+        if (compiledMemberPatch != null && originalEntity.getClass() == Member.class) {
+            Member patched = compiledMemberPatch.apply((Member) originalEntity);
+            if (patched != null) {
+                // This is safe, as the class was just checked
+                @SuppressWarnings("unchecked")
+                T patchedEntity = (T) patched;
+                return patchedEntity;
+            }
+            // let the tree path report the failure
+        }
+
         JsonNode entityAsJson = mapper.valueToTree(originalEntity);
         JsonNode updatedEntityAsJson = applyPatch(jsonPatch, entityAsJson);
 
@@ -44,11 +74,6 @@ public class JsonPatchRequest {
         return convertUpdatedJsonBackToEntity(entityClass, updatedEntityAsJson);
     }
 
-    private JsonPatch parseAndBuildPatch(String jsonPatchText) {
-        JsonNode jsonNode = parseJson(jsonPatchText);
-        return buildPatch(jsonNode);
-    }
-
     private JsonNode parseJson(String jsonPatchText) {
         JsonNode jsonNode;
         try {
@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Remembers the {@link JsonPatchRequest}s built from recently seen patch bodies, so that a patch a client sends over
+ * and over is built and compiled once. Requests are immutable, so one instance can be shared by any number of PATCHes.
+ * <p/>
+ * Patches are keyed by their raw body bytes, so a repeated patch is found without being parsed at all; bodies that
+ * only differ in formatting get entries of their own. The cache is bounded by the total size of its keys, which can be
+ * set with the <code>kitchensink.patchCache.maxBytes</code> system property; patches that fail to build are not
+ * cached.
+ */
+public class JsonPatchRequestCache {
+
+    static final long MAX_BYTES = Long.getLong("kitchensink.patchCache.maxBytes", 1 << 20);
+
+    /**
+     * A rough allowance for the parsed form of an entry, in bytes, so that many tiny patches still count for something.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * A patch body; the bytes are never modified once it is built.
+     */
+    private static final class Body {
+
+        final byte[] bytes;
+
+        final int hash;
+
+        Body(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Body && hash == ((Body) o).hash && Arrays.equals(bytes, ((Body) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Cache<Body, JsonPatchRequest> cache = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_BYTES)
+        .weigher(new Weigher<Body, JsonPatchRequest>() {
+            @Override
+            public int weigh(Body key, JsonPatchRequest value) {
+                return key.bytes.length + ENTRY_OVERHEAD;
+            }
+        })
+        .recordStats()
+        .build();
+
+    /**
+     * Returns the request cached for the given patch body, building it with the given loader if there is none. The
+     * caller must not modify the body afterwards.
+     *
+     * @throws RuntimeException whatever the loader throws, such as a WebApplicationException for a bad patch
+     */
+    JsonPatchRequest get(byte[] body, Callable<JsonPatchRequest> loader) {
+        try {
+            return cache.get(new Body(body), loader);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    long size() {
+        return cache.size();
+    }
+}
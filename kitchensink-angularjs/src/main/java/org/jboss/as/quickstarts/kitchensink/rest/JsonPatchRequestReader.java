@@ -1,51 +1,60 @@
 package org.jboss.as.quickstarts.kitchensink.rest;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.github.fge.jackson.JacksonUtils;
 import com.google.common.base.Charsets;
 import com.google.common.io.ByteStreams;
-import com.google.common.io.CharStreams;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.WebApplicationException;
-import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.Provider;
-import javax.ws.rs.ext.Providers;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 /**
+ * Reads a json patch from the request body. A body larger than <code>kitchensink.jsonPatch.maxBytes</code> is rejected
+ * as soon as that is known, without reading the rest of it. A body seen recently is answered from
+ * {@link JsonPatchRequestCache} without being parsed; any other is parsed one operation at a time, and rejected once it
+ * turns out to have more than <code>kitchensink.jsonPatch.maxOperations</code> operations.
+ *
  * @author Matt Drees
  */
 @Provider
 @Consumes("application/json-patch")
 public class JsonPatchRequestReader implements MessageBodyReader<JsonPatchRequest>{
 
-    @Context
-    Providers providers;
+    static final long MAX_BYTES = Long.getLong("kitchensink.jsonPatch.maxBytes", 64 * 1024);
 
-    //TODO: integrate with the the ObjectMapper used by the jax-rs implementation
-    ObjectMapper mapper = new ObjectMapper()
-            .setNodeFactory(JacksonUtils.nodeFactory())
-            .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    static final int MAX_OPERATIONS = Integer.getInteger("kitchensink.jsonPatch.maxOperations", 256);
 
-    @Override
-    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+    ObjectMapper mapper = JsonMapping.shared().getMapper();
 
-        MessageBodyReader<String> stringReader = providers.getMessageBodyReader(String.class, String.class, annotations, mediaType);
+    /**
+     * Shared by every reader instance; its statistics are reported by {@link StatisticsRESTService}.
+     */
+    static final JsonPatchRequestCache cache = new JsonPatchRequestCache();
 
-        return JsonPatchRequest.class.isAssignableFrom(type) &&
-                stringReader.isReadable(String.class, String.class, annotations, mediaType);
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return JsonPatchRequest.class.isAssignableFrom(type);
     }
 
     @Override
@@ -57,13 +66,117 @@ public class JsonPatchRequestReader implements MessageBodyReader<JsonPatchReques
             MultivaluedMap<String, String> httpHeaders,
             InputStream entityStream) throws IOException, WebApplicationException {
 
-        MessageBodyReader<String> stringReader = providers.getMessageBodyReader(String.class, String.class, annotations, mediaType);
-        String contentAsString = stringReader.readFrom(String.class, String.class, annotations, mediaType, httpHeaders, entityStream);
-        return buildJsonPatchRequest(contentAsString);
+        Charset charset = charsetOf(mediaType);
+        byte[] body = ByteStreams.toByteArray(boundedBody(httpHeaders, entityStream, MAX_BYTES, "json patch"));
+        if (charset != null) {
+            // so that one patch always has the same key, whatever charset it was sent in
+            body = new String(body, charset).getBytes(Charsets.UTF_8);
+        }
+        return buildJsonPatchRequest(body);
     }
 
     // public for testing
     public JsonPatchRequest buildJsonPatchRequest(String contentAsString) {
-        return new JsonPatchRequest(Logger.getLogger(JsonPatchRequest.class.getName()), mapper, contentAsString);
+        return buildJsonPatchRequest(contentAsString.getBytes(Charsets.UTF_8));
+    }
+
+    private JsonPatchRequest buildJsonPatchRequest(final byte[] body) {
+        return cache.get(body, new Callable<JsonPatchRequest>() {
+            @Override
+            public JsonPatchRequest call() throws IOException {
+                JsonParser parser = mapper.getFactory().createParser(body);
+                JsonNode jsonPatchNode;
+                try {
+                    jsonPatchNode = readOperations(parser);
+                } catch (JsonProcessingException e) {
+                    throw badPatch("unable to parse json patch: " + e.getMessage());
+                } finally {
+                    parser.close();
+                }
+                return new JsonPatchRequest(Logger.getLogger(JsonPatchRequest.class.getName()), mapper, jsonPatchNode);
+            }
+        });
+    }
+
+    /**
+     * Reads the top-level array of a patch, checking the operation count as each operation is read.
+     */
+    private ArrayNode readOperations(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw badPatch("unable to parse json patch: a json patch must be an array of operations");
+        }
+        ArrayNode operations = JacksonUtils.nodeFactory().arrayNode();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (operations.size() == MAX_OPERATIONS) {
+                throw tooLarge("json patch has more than " + MAX_OPERATIONS + " operations");
+            }
+            JsonNode operation = mapper.readTree(parser);
+            if (operation == null) {
+                throw badPatch("unable to parse json patch: unexpected end of input");
+            }
+            operations.add(operation);
+        }
+        if (parser.nextToken() != null) {
+            throw badPatch("unable to parse json patch: unexpected content after the operations array");
+        }
+        return operations;
+    }
+
+    /**
+     * Rejects a body whose Content-Length is over the given limit straight away, and otherwise bounds what can be read
+     * from it, as the header may be absent or wrong.
+     *
+     * @param description what the body holds, for the error message
+     */
+    static InputStream boundedBody(
+            MultivaluedMap<String, String> httpHeaders, InputStream entityStream, long maxBytes, String description) {
+        String contentLength = httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null && isLongerThan(contentLength, maxBytes)) {
+            throw tooLarge(description + " is larger than " + maxBytes + " bytes");
+        }
+        return new BoundedInputStream(entityStream, maxBytes, description);
+    }
+
+    private static boolean isLongerThan(String contentLength, long maxBytes) {
+        try {
+            return Long.parseLong(contentLength.trim()) > maxBytes;
+        } catch (NumberFormatException e) {
+            // the container deals with a bad header; the bounded stream still applies
+            return false;
+        }
+    }
+
+    /**
+     * @return the charset named by the media type, or null to let the parser detect the json encoding
+     */
+    static Charset charsetOf(MediaType mediaType) {
+        String name = mediaType == null ? null : mediaType.getParameters().get("charset");
+        if (name == null) {
+            return null;
+        }
+        try {
+            Charset charset = Charset.forName(name);
+            return charset.equals(Charsets.UTF_8) ? null : charset;
+        } catch (IllegalCharsetNameException e) {
+            throw badPatch("unsupported charset: " + name);
+        } catch (UnsupportedCharsetException e) {
+            throw badPatch("unsupported charset: " + name);
+        }
+    }
+
+    private static WebApplicationException badPatch(String message) {
+        return new WebApplicationException(
+            Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity(message)
+                .build());
+    }
+
+    static WebApplicationException tooLarge(String message) {
+        return new WebApplicationException(
+            Response
+                .status(new RequestEntityTooLargeStatusType())
+                .entity(message)
+                .build());
     }
 }
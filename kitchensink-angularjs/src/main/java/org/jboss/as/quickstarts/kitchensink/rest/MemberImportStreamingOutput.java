@@ -0,0 +1,317 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.service.MemberImport;
+import org.jboss.as.quickstarts.kitchensink.service.MemberImportListener;
+import org.jboss.as.quickstarts.kitchensink.service.MemberImportRecord;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Imports newline-delimited JSON members from a request body while streaming the outcome back.
+ * <p/>
+ * Records are parsed and checked one line at a time as the body arrives, and accepted ones are handed through a
+ * bounded queue to a {@link MemberImport} writer on another thread. When the writer falls behind the queue fills up
+ * and reading stops, so the upload is throttled instead of buffered.
+ * <p/>
+ * The response is also newline-delimited JSON: a line for each rejected record, a progress line after each chunk the
+ * writer commits, and a final summary line. A line longer than {@code kitchensink.import.maxLineChars} characters is
+ * rejected without being held in memory. If the writer stops before every record is queued, the import is aborted
+ * with an error line rather than dropping the remaining records.
+ */
+public class MemberImportStreamingOutput implements StreamingOutput {
+
+    /**
+     * How a record is checked before it is queued, and how a registration failure is reported. These are the rules
+     * of {@link MemberResourceRESTService#createMember(Member)}.
+     */
+    interface RecordChecks {
+
+        /**
+         * @return a rejection, or null if the member may be registered
+         */
+        Response.ResponseBuilder check(Member member);
+
+        Response.ResponseBuilder failure(Exception e);
+    }
+
+    static final int QUEUE_CAPACITY = 2 * MemberImport.CHUNK_SIZE;
+
+    static final int MAX_LINE_CHARS = Integer.getInteger("kitchensink.import.maxLineChars", 16 * 1024);
+
+    private static final long OFFER_TIMEOUT_SECONDS = 1;
+
+    private final Logger log;
+
+    private final JsonMapping json;
+
+    private final InputStream input;
+
+    private final MemberImport memberImport;
+
+    private final RecordChecks checks;
+
+    private final Object outputLock = new Object();
+
+    private OutputStream output;
+
+    private long read;
+
+    private long registered;
+
+    private long rejected;
+
+    MemberImportStreamingOutput(
+            Logger log, JsonMapping json, InputStream input, MemberImport memberImport, RecordChecks checks) {
+        this.log = log;
+        this.json = json;
+        this.input = input;
+        this.memberImport = memberImport;
+        this.checks = checks;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        this.output = output;
+        BlockingQueue<MemberImportRecord> queue = new ArrayBlockingQueue<MemberImportRecord>(QUEUE_CAPACITY);
+        Future<Long> writer = memberImport.writeFrom(queue, new ProgressReport());
+        long unqueued;
+        try {
+            unqueued = readRecords(queue, writer);
+        } finally {
+            enqueue(queue, MemberImportRecord.END, writer);
+        }
+        try {
+            writer.get();
+            if (unqueued > 0) {
+                writeLine(ImmutableMap.of("error", "import aborted: the writer stopped before record " + unqueued));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the import to finish", e);
+        } catch (ExecutionException e) {
+            log.log(Level.SEVERE, "import writer failed", e.getCause());
+            writeLine(ImmutableMap.of("error", "import aborted: " + e.getCause()));
+        }
+        synchronized (outputLock) {
+            writeLine(ImmutableMap.of("done", progress()));
+        }
+    }
+
+    /**
+     * @return the number of the first record that could not be queued because the writer had stopped, or 0 if every
+     *         accepted record was queued
+     */
+    private long readRecords(BlockingQueue<MemberImportRecord> queue, Future<Long> writer) throws IOException {
+        LineReader reader = new LineReader(new BufferedReader(new InputStreamReader(input, Charsets.UTF_8)));
+        long number = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            if (line.trim().isEmpty() && !reader.isTruncated()) {
+                continue;
+            }
+            synchronized (outputLock) {
+                read++;
+            }
+            if (reader.isTruncated()) {
+                reject(number, Response
+                    .status(new RequestEntityTooLargeStatusType())
+                    .entity(ImmutableMap.of("error", "member record is longer than " + MAX_LINE_CHARS + " characters"))
+                    .build());
+                continue;
+            }
+            Member member = parse(number, line);
+            if (member == null) {
+                continue;
+            }
+            Response.ResponseBuilder rejection = checks.check(member);
+            if (rejection != null) {
+                reject(number, rejection.build());
+                continue;
+            }
+            if (!enqueue(queue, new MemberImportRecord(number, member), writer)) {
+                return number;
+            }
+        }
+        return 0;
+    }
+
+    private Member parse(long number, String line) throws IOException {
+        try {
+            return json.getMemberReader().readValue(line);
+        } catch (JsonProcessingException e) {
+            reject(number, Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity(ImmutableMap.of("error", "unable to parse member: " + e.getOriginalMessage()))
+                .build());
+            return null;
+        }
+    }
+
+    /**
+     * Blocks while the queue is full, unless the writer has stopped.
+     *
+     * @return false if the writer has stopped, so the record will never be written
+     */
+    private boolean enqueue(BlockingQueue<MemberImportRecord> queue, MemberImportRecord record, Future<Long> writer)
+            throws IOException {
+        try {
+            while (!writer.isDone()) {
+                if (queue.offer(record, OFFER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while queueing an imported member", e);
+        }
+    }
+
+    private void reject(long number, Response rejection) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<String, Object>();
+        line.put("record", number);
+        line.put("status", rejection.getStatus());
+        line.put("errors", rejection.getEntity());
+        synchronized (outputLock) {
+            rejected++;
+            writeLine(line);
+        }
+    }
+
+    private Map<String, Long> progress() {
+        return ImmutableMap.of("read", read, "registered", registered, "rejected", rejected);
+    }
+
+    private void writeLine(Object value) throws IOException {
+        synchronized (outputLock) {
+            output.write(json.getMapper().writeValueAsBytes(value));
+            output.write('\n');
+        }
+    }
+
+    /**
+     * Splits the body into lines as {@link BufferedReader#readLine()} does, but holds at most {@link #MAX_LINE_CHARS}
+     * of a line; the rest of a longer line is skipped.
+     */
+    private static class LineReader {
+
+        private final Reader reader;
+
+        private final StringBuilder line = new StringBuilder();
+
+        private boolean truncated;
+
+        private boolean skipLineFeed;
+
+        LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return the next line without its terminator, or null at the end of the body
+         */
+        String readLine() throws IOException {
+            line.setLength(0);
+            truncated = false;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    skipLineFeed = c == '\r';
+                    return line.toString();
+                }
+                if (line.length() < MAX_LINE_CHARS) {
+                    line.append((char) c);
+                } else {
+                    truncated = true;
+                }
+            }
+            return line.length() > 0 || truncated ? line.toString() : null;
+        }
+
+        /**
+         * @return whether the last line read was cut short
+         */
+        boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    /**
+     * Reports the writer's results; called on the writer's thread.
+     */
+    private class ProgressReport implements MemberImportListener {
+
+        @Override
+        public void registered(MemberImportRecord record) {
+            synchronized (outputLock) {
+                registered++;
+            }
+        }
+
+        @Override
+        public void failed(MemberImportRecord record, Exception e) {
+            try {
+                reject(record.getNumber(), checks.failure(e).build());
+            } catch (IOException writeException) {
+                log.log(Level.FINE, "cannot report import failure of record " + record.getNumber(), writeException);
+            }
+        }
+
+        @Override
+        public void chunkWritten() {
+            try {
+                synchronized (outputLock) {
+                    writeLine(ImmutableMap.of("progress", progress()));
+                    output.flush();
+                }
+            } catch (IOException e) {
+                log.log(Level.FINE, "cannot report import progress", e);
+            }
+        }
+    }
+}
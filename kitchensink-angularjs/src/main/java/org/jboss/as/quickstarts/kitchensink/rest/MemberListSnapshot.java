@@ -0,0 +1,42 @@
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import javax.ws.rs.core.EntityTag;
+
+/**
+ * The full member list, ordered by name, serialized to JSON both as is and gzipped, together with the list version
+ * it was built from.
+ */
+public class MemberListSnapshot {
+
+    private final EntityTag tag;
+
+    private final EncodedEntity json;
+
+    private final EncodedEntity gzippedJson;
+
+    public MemberListSnapshot(EntityTag tag, byte[] json, byte[] gzippedJson) {
+        this.tag = tag;
+        this.json = new EncodedEntity(json, null);
+        this.gzippedJson = new EncodedEntity(gzippedJson, "gzip");
+    }
+
+    public EntityTag getTag() {
+        return tag;
+    }
+
+    /**
+     * @return the tag of the gzipped body, which as a different representation of the list version needs a strong tag
+     *         of its own
+     */
+    public static EntityTag gzippedTagOf(EntityTag tag) {
+        return new EntityTag(tag.getValue() + "-gzip");
+    }
+
+    public EncodedEntity getJson() {
+        return json;
+    }
+
+    public EncodedEntity getGzippedJson() {
+        return gzippedJson;
+    }
+}
@@ -0,0 +1,114 @@
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
+import org.jboss.as.quickstarts.kitchensink.data.MemberSortKey;
+import org.jboss.as.quickstarts.kitchensink.data.MemberVersionTracker;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import javax.ws.rs.core.EntityTag;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Holds a pre-serialized {@link MemberListSnapshot} of the full member list, so the most common list request is
+ * answered with a byte copy instead of a query and a round of serialization.
+ * <p/>
+ * A committed member change schedules a rebuild in the background; concurrent changes collapse into one rebuild.
+ * The snapshot is only handed out while its tag matches the current list version, so a request never gets stale
+ * data, just the uncached path, while a rebuild is on its way.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MemberListSnapshotCache {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private MemberRepository repository;
+
+    @Inject
+    private MemberVersionTracker versions;
+
+    @Inject
+    private JsonMapping jsonMapping;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private volatile MemberListSnapshot snapshot;
+
+    @PostConstruct
+    void buildInitialSnapshot() {
+        rebuild();
+    }
+
+    /**
+     * @return the snapshot for the given list version, or null if it is not (yet) available
+     */
+    public MemberListSnapshot get(EntityTag currentTag) {
+        MemberListSnapshot current = snapshot;
+        if (current != null && current.getTag().equals(currentTag)) {
+            return current;
+        }
+        scheduleRebuild();
+        return null;
+    }
+
+    public void onMemberChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) final Member member) {
+        scheduleRebuild();
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            sessionContext.getBusinessObject(MemberListSnapshotCache.class).rebuildInBackground();
+        }
+    }
+
+    @Asynchronous
+    public void rebuildInBackground() {
+        // clear the flag first, so a change committing while we query schedules another rebuild
+        rebuildScheduled.set(false);
+        rebuild();
+    }
+
+    private void rebuild() {
+        // take the tag before querying, see MemberVersionTracker.listTag()
+        EntityTag tag = versions.listTag();
+        List<Member> members = repository.findPage(MemberSortKey.NAME, null, null);
+        try {
+            byte[] json = jsonMapping.getMemberListWriter().writeValueAsBytes(members);
+            snapshot = new MemberListSnapshot(tag, json, gzip(json));
+        } catch (IOException e) {
+            throw new RuntimeException("unable to serialize member list", e);
+        }
+        log.fine("rebuilt member list snapshot " + tag + " with " + members.size() + " members");
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(bytes);
+        gzip.close();
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,50 @@
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.jboss.as.quickstarts.kitchensink.data.MemberCallback;
+import org.jboss.as.quickstarts.kitchensink.data.MemberSortKey;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.service.MemberExport;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the member list as a JSON array straight from a database cursor to the response, one member at a time, so
+ * the heap used by a request does not depend on the number of members.
+ */
+public class MemberListStreamingOutput implements StreamingOutput {
+
+    private final MemberExport export;
+
+    private final JsonMapping json;
+
+    private final MemberSortKey sortKey;
+
+    public MemberListStreamingOutput(MemberExport export, JsonMapping json, MemberSortKey sortKey) {
+        this.export = export;
+        this.json = json;
+        this.sortKey = sortKey;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        final JsonGenerator generator = json.getMapper().getFactory().createJsonGenerator(output);
+        final ObjectWriter writer = json.getMemberElementWriter();
+        // the container owns the response stream
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+        export.exportAll(sortKey, new MemberCallback() {
+            @Override
+            public void handle(Member member) throws IOException {
+                writer.writeValue(generator, member);
+            }
+        });
+        generator.writeEndArray();
+        generator.close();
+    }
+}
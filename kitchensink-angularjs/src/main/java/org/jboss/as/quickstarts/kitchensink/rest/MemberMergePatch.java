@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.service.MemberUpdate;
+
+/**
+ * A JSON Merge Patch (RFC 7386) for a member, such as <code>{"phoneNumber": "2125551234"}</code>. It is read straight
+ * into setter calls (see {@link CompiledMemberPatch#readMergePatch}), so neither the patch nor the member goes through
+ * a JSON tree.
+ */
+public class MemberMergePatch implements MemberUpdate {
+
+    public static final String MEDIA_TYPE = "application/merge-patch+json";
+
+    private final CompiledMemberPatch patch;
+
+    MemberMergePatch(CompiledMemberPatch patch) {
+        this.patch = patch;
+    }
+
+    /**
+     * @return a patched copy of the given member
+     */
+    @Override
+    public Member apply(Member current) {
+        // a merge patch has no tests, so this never fails
+        return patch.apply(current);
+    }
+}
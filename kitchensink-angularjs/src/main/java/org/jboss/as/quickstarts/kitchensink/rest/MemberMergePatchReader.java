@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * Reads a {@link MemberMergePatch} from the request body with a streaming parser, under the same size limit and
+ * charset rules as json patches (see {@link JsonPatchRequestReader}).
+ */
+@Provider
+@Consumes(MemberMergePatch.MEDIA_TYPE)
+public class MemberMergePatchReader implements MessageBodyReader<MemberMergePatch> {
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return MemberMergePatch.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public MemberMergePatch readFrom(
+            Class<MemberMergePatch> type,
+            Type genericType,
+            Annotation[] annotations,
+            MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders,
+            InputStream entityStream) throws IOException, WebApplicationException {
+        Charset charset = JsonPatchRequestReader.charsetOf(mediaType);
+        InputStream boundedStream = JsonPatchRequestReader.boundedBody(
+            httpHeaders, entityStream, JsonPatchRequestReader.MAX_BYTES, "merge patch");
+        JsonFactory factory = JsonMapping.shared().getMapper().getFactory();
+        return buildMemberMergePatch(charset == null
+            ? factory.createParser(boundedStream)
+            : factory.createParser(new InputStreamReader(boundedStream, charset)));
+    }
+
+    // public for testing
+    public MemberMergePatch buildMemberMergePatch(String contentAsString) {
+        try {
+            return buildMemberMergePatch(JsonMapping.shared().getMapper().getFactory().createParser(contentAsString));
+        } catch (IOException e) {
+            //we're reading from a String, so I don't think this will happen.
+            throw new RuntimeException("unexpected IO exception", e);
+        }
+    }
+
+    private MemberMergePatch buildMemberMergePatch(JsonParser parser) throws IOException {
+        try {
+            return new MemberMergePatch(CompiledMemberPatch.readMergePatch(parser));
+        } catch (JsonProcessingException e) {
+            throw new WebApplicationException(
+                e,
+                Response
+                    .status(Response.Status.BAD_REQUEST)
+                    .entity("unable to parse merge patch: " + e.getOriginalMessage())
+                    .build());
+        } finally {
+            parser.close();
+        }
+    }
+}
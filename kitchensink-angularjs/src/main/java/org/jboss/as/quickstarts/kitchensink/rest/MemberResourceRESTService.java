@@ -17,32 +17,59 @@
 package org.jboss.as.quickstarts.kitchensink.rest;
 
 import com.google.common.collect.ImmutableMap;
+import org.hibernate.StaleStateException;
+import org.jboss.as.quickstarts.kitchensink.data.MemberCursor;
+import org.jboss.as.quickstarts.kitchensink.data.MemberEmailIndex;
+import org.jboss.as.quickstarts.kitchensink.data.MemberField;
 import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
+import org.jboss.as.quickstarts.kitchensink.data.MemberSearchIndex;
+import org.jboss.as.quickstarts.kitchensink.data.MemberSortKey;
+import org.jboss.as.quickstarts.kitchensink.data.MemberVersionTracker;
 import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.service.MemberBatchRegistration;
+import org.jboss.as.quickstarts.kitchensink.service.MemberCounter;
+import org.jboss.as.quickstarts.kitchensink.service.MemberExport;
+import org.jboss.as.quickstarts.kitchensink.service.MemberImport;
 import org.jboss.as.quickstarts.kitchensink.service.MemberRegistration;
+import org.jboss.as.quickstarts.kitchensink.service.MemberUpdate;
+import org.jboss.as.quickstarts.kitchensink.service.MemberValidator;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.persistence.NoResultException;
-import javax.validation.ConstraintViolation;
-import javax.validation.ConstraintViolationException;
-import javax.validation.ValidationException;
-import javax.validation.Validator;
+import javax.persistence.OptimisticLockException;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -54,11 +81,35 @@ import java.util.logging.Logger;
 @RequestScoped
 public class MemberResourceRESTService {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    static final int MAX_SEARCH_RESULTS = 100;
+
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    static final int MAX_BATCH_SIZE = 50000;
+
+    static final int MAX_BULK_PATCH_SIZE = 1000;
+
+    static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * The number of members registered per transaction by a batch; a failing chunk is retried member by member.
+     */
+    static final int BATCH_CHUNK_SIZE = 500;
+
+    /**
+     * The smallest number of members worth validating on a thread of its own.
+     */
+    static final int VALIDATION_SLICE_SIZE = 250;
+
     @Inject
     private Logger log;
 
     @Inject
-    private Validator validator;
+    private MemberValidator memberValidator;
 
     @Inject
     private MemberRepository repository;
@@ -66,22 +117,305 @@ public class MemberResourceRESTService {
     @Inject
     MemberRegistration registration;
 
+    @Inject
+    MemberBatchRegistration batchRegistration;
+
+    @Inject
+    MemberExport export;
+
+    @Inject
+    MemberImport memberImport;
+
+    @Inject
+    MemberVersionTracker versions;
+
+    @Inject
+    MemberListSnapshotCache snapshots;
+
+    @Inject
+    MemberSearchIndex searchIndex;
+
+    @Inject
+    MemberCounter counter;
+
+    @Inject
+    MemberEmailIndex emailIndex;
+
+    @Inject
+    JsonMapping json;
+
+    /**
+     * Lists members ordered by the given sort key (name, email or id).
+     * <p/>
+     * If neither {@code limit} nor {@code after} is given, every member is returned. Otherwise one page is returned,
+     * and if there are more members a {@code Link: <...>; rel="next"} header carries the URI of the next page; its
+     * {@code after} parameter is an opaque cursor and should not be built by clients.
+     * <p/>
+     * With {@code stream=true} the whole list, in sort key order, is written from a database cursor as it is read
+     * instead of being loaded first, which keeps memory use flat for very large tables. A stream is never paged, so
+     * it cannot be combined with {@code limit} or {@code after}.
+     * <p/>
+     * Responses carry an ETag that changes whenever a member is registered or updated; a request whose
+     * {@code If-None-Match} still matches is answered with 304 Not Modified without querying the database.
+     * The full list by name may be sent gzipped; that body has an ETag of its own, and such responses vary by
+     * {@code Accept-Encoding}.
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Member> listAllMembers() {
-        return repository.findAllOrderedByName();
+    public Response listAllMembers(
+            @QueryParam("limit") Integer limit,
+            @QueryParam("after") String after,
+            @QueryParam("sort") @DefaultValue("name") String sort,
+            @QueryParam("stream") boolean stream,
+            @QueryParam("fields") String fieldList,
+            @Context UriInfo uriInfo,
+            @Context Request request,
+            @Context HttpHeaders headers) {
+        EntityTag tag = versions.listTag();
+        long total = counter.count();
+        // the whole list by name may be answered from the snapshot, whose gzipped body carries a tag of its own
+        boolean wholeList = !stream && limit == null && after == null && fieldList == null
+            && MemberSortKey.NAME.getAttribute().equals(sort);
+        boolean gzip = wholeList && acceptsGzip(headers);
+        EntityTag preferredTag = gzip ? MemberListSnapshot.gzippedTagOf(tag) : tag;
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(preferredTag);
+        if (notModified != null) {
+            return listHeaders(varyByEncoding(notModified, wholeList), preferredTag, total).build();
+        }
+
+        Set<MemberField> fields = fieldList == null ? null : parseFields(fieldList);
+        MemberSortKey sortKey = parseSortKey(sort);
+        if (stream) {
+            if (fields != null) {
+                throw badRequest("fields cannot be combined with stream");
+            }
+            if (limit != null || after != null) {
+                throw badRequest("limit and after cannot be combined with stream");
+            }
+            return listHeaders(Response.ok(new MemberListStreamingOutput(export, json, sortKey)), tag, total).build();
+        }
+        MemberCursor cursor = after == null ? null : parseCursor(after, sortKey);
+        if (limit == null && cursor == null) {
+            if (fields != null) {
+                List<Map<String, Object>> members = repository.findPageProjected(fields, sortKey, null, null);
+                return listHeaders(Response.ok(members), tag, total).build();
+            }
+            if (wholeList) {
+                MemberListSnapshot snapshot = snapshots.get(tag);
+                if (snapshot != null) {
+                    EncodedEntity entity = gzip ? snapshot.getGzippedJson() : snapshot.getJson();
+                    Response.ResponseBuilder builder = Response.ok(entity, MediaType.APPLICATION_JSON_TYPE);
+                    return listHeaders(varyByEncoding(builder, true), preferredTag, total).build();
+                }
+            }
+            List<Member> members = repository.findPage(sortKey, null, null);
+            return listHeaders(varyByEncoding(Response.ok(membersEntity(members)), wholeList), tag, total).build();
+        }
+
+        int pageSize = checkPageSize(limit == null ? DEFAULT_PAGE_SIZE : limit);
+        Response.ResponseBuilder builder = fields == null
+            ? listPage(sortKey, cursor, pageSize, uriInfo)
+            : listProjectedPage(fields, sortKey, cursor, pageSize, uriInfo);
+        return listHeaders(builder, tag, total).build();
+    }
+
+    private Response.ResponseBuilder listHeaders(Response.ResponseBuilder builder, EntityTag tag, long total) {
+        return builder.tag(tag).header(TOTAL_COUNT_HEADER, total);
+    }
+
+    private Response.ResponseBuilder varyByEncoding(Response.ResponseBuilder builder, boolean wholeList) {
+        return wholeList ? builder.header("Vary", HttpHeaders.ACCEPT_ENCODING) : builder;
+    }
+
+    private Response.ResponseBuilder listPage(MemberSortKey sortKey, MemberCursor cursor, int pageSize, UriInfo uriInfo) {
+        // fetch one extra row to find out whether there is a next page
+        List<Member> members = repository.findPage(sortKey, cursor, pageSize + 1);
+        if (members.size() > pageSize) {
+            members = members.subList(0, pageSize);
+            MemberCursor next = MemberCursor.after(sortKey, members.get(pageSize - 1));
+            return Response.ok(membersEntity(members)).header("Link", nextPageLink(uriInfo, pageSize, next));
+        }
+        return Response.ok(membersEntity(members));
+    }
+
+    private Response.ResponseBuilder listProjectedPage(
+            Set<MemberField> fields,
+            MemberSortKey sortKey,
+            MemberCursor cursor,
+            int pageSize,
+            UriInfo uriInfo) {
+        // the next page cursor needs the sort key and id of the last row, even if they were not asked for
+        Set<MemberField> queriedFields = EnumSet.copyOf(fields);
+        queriedFields.add(MemberField.ID);
+        queriedFields.add(MemberField.of(sortKey));
+
+        List<Map<String, Object>> members = repository.findPageProjected(queriedFields, sortKey, cursor, pageSize + 1);
+        String link = null;
+        if (members.size() > pageSize) {
+            members = members.subList(0, pageSize);
+            Map<String, Object> last = members.get(pageSize - 1);
+            MemberCursor next = new MemberCursor(
+                sortKey,
+                String.valueOf(last.get(sortKey.getAttribute())),
+                (Long) last.get(MemberField.ID.getAttribute()));
+            link = nextPageLink(uriInfo, pageSize, next);
+        }
+        if (!queriedFields.equals(fields)) {
+            for (Map<String, Object> member : members) {
+                for (MemberField field : queriedFields) {
+                    if (!fields.contains(field)) {
+                        member.remove(field.getAttribute());
+                    }
+                }
+            }
+        }
+        Response.ResponseBuilder builder = Response.ok(members);
+        return link == null ? builder : builder.header("Link", link);
+    }
+
+    private String nextPageLink(UriInfo uriInfo, int pageSize, MemberCursor next) {
+        String nextUri = uriInfo.getRequestUriBuilder()
+            .replaceQueryParam("limit", pageSize)
+            .replaceQueryParam("after", next.encode())
+            .build()
+            .toString();
+        return "<" + nextUri + ">; rel=\"next\"";
+    }
+
+    private boolean acceptsGzip(HttpHeaders headers) {
+        List<String> acceptEncodings = headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncodings == null) {
+            return false;
+        }
+        for (String acceptEncoding : acceptEncodings) {
+            for (String coding : acceptEncoding.split(",")) {
+                String[] nameAndParameters = coding.trim().split(";");
+                if (nameAndParameters[0].trim().equalsIgnoreCase("gzip")) {
+                    // "gzip;q=0" explicitly refuses gzip
+                    return !(nameAndParameters.length > 1 && nameAndParameters[1].trim().matches("q=0(\\.0*)?"));
+                }
+            }
+        }
+        return false;
     }
 
+    private GenericEntity<List<Member>> membersEntity(List<Member> members) {
+        return new GenericEntity<List<Member>>(members) {};
+    }
+
+    private Set<MemberField> parseFields(String fieldList) {
+        try {
+            return MemberField.parseList(fieldList);
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    private MemberSortKey parseSortKey(String sort) {
+        try {
+            return MemberSortKey.fromAttribute(sort);
+        } catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    private MemberCursor parseCursor(String after, MemberSortKey sortKey) {
+        MemberCursor cursor;
+        try {
+            cursor = MemberCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            throw badRequest("invalid 'after' cursor: " + e.getMessage());
+        }
+        if (cursor.getSortKey() != sortKey) {
+            throw badRequest("the 'after' cursor was issued for sort=" + cursor.getSortKey().getAttribute());
+        }
+        return cursor;
+    }
+
+    private int checkPageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw badRequest("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    private WebApplicationException badRequest(String error) {
+        return new WebApplicationException(
+            Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity(ImmutableMap.of("error", error))
+                .build());
+    }
+
+    /**
+     * Reports the total number of members in an {@code X-Total-Count} header, without listing them. The count is
+     * maintained in memory, so this is cheap enough to poll.
+     */
+    @HEAD
+    public Response countMembers() {
+        return listHeaders(Response.ok(), versions.listTag(), counter.count()).build();
+    }
+
+    /**
+     * Typeahead search: finds members whose email, whole name or a word of whose name starts with {@code q}, ignoring
+     * case and accents. This is answered from an in-memory index, without querying the database.
+     */
+    @GET
+    @Path("/search")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<Member> searchMembers(@QueryParam("q") String q, @QueryParam("limit") @DefaultValue("10") int limit) {
+        if (q == null || q.trim().length() == 0) {
+            throw badRequest("a search prefix must be given as 'q'");
+        }
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw badRequest("limit must be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+        return searchIndex.search(q, limit);
+    }
+
+    /**
+     * Looks up a single member. The response carries the member's version as an ETag, for {@code If-Match} on updates,
+     * and a matching {@code If-None-Match} is answered with 304 Not Modified, without loading the member if its version
+     * is known. {@code fields} selects attributes as for the list.
+     */
     @GET
     @Path("/{id:[0-9][0-9]*}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Member lookupMemberById(@PathParam("id") long id) {
+    public Response lookupMemberById(
+            @PathParam("id") long id,
+            @QueryParam("fields") String fieldList,
+            @Context Request request) {
+        EntityTag tag = versions.memberTag(id);
+        Member member = null;
+        if (tag == null) {
+            // first sight of this member since startup
+            member = findMember(id);
+            tag = versions.memberTag(member);
+        }
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.tag(tag).build();
+        }
+        if (fieldList != null) {
+            Map<String, Object> projected = repository.findProjectedById(parseFields(fieldList), id);
+            handleNonexistingMember(id, projected);
+            return Response.ok(projected).tag(tag).build();
+        }
+        if (member == null) {
+            member = findMember(id);
+            // the member may have moved on from the version remembered, so tag the one actually sent
+            tag = versions.memberTag(member);
+        }
+        return Response.ok(member).tag(tag).build();
+    }
+
+    private Member findMember(long id) {
         Member member = repository.findById(id);
         handleNonexistingMember(id, member);
         return member;
     }
 
-    private void handleNonexistingMember(long id, Member member) {
+    private void handleNonexistingMember(long id, Object member) {
         if (member == null) {
             throw new WebApplicationException(
                 Response
@@ -115,50 +449,305 @@ public class MemberResourceRESTService {
         return builder.build();
     }
 
+    /**
+     * Creates many members at once. Members are validated in parallel, then registered in chunks of
+     * {@value #BATCH_CHUNK_SIZE} per transaction, with inserts sent in JDBC batches.
+     * <p/>
+     * The response is 200 with a report holding, for each member in order, its {@code index}, a {@code status} (200,
+     * 400 or 409, as {@link #createMember(Member)} would answer) and either the new {@code id} or the {@code errors}.
+     * An invalid member does not stop the others from being registered.
+     */
+    @POST
+    @Path("/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<Map<String, Object>> createMembers(List<Member> members) {
+        if (members == null || members.isEmpty()) {
+            throw badRequest("a batch must hold at least one member");
+        }
+        if (members.size() > MAX_BATCH_SIZE) {
+            throw badRequest("a batch can hold at most " + MAX_BATCH_SIZE + " members");
+        }
+        List<Map<String, String>> violations = validateInParallel(members);
+
+        List<Map<String, Object>> report = new ArrayList<Map<String, Object>>(members.size());
+        List<Integer> accepted = new ArrayList<Integer>(members.size());
+        Set<String> batchEmails = new HashSet<String>();
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get(i);
+            Response.ResponseBuilder rejection = null;
+            if (!violations.get(i).isEmpty()) {
+                rejection = createViolationResponse(violations.get(i));
+            } else if (!batchEmails.add(member.getEmail()) || emailAlreadyExists(null, member.getEmail())) {
+                rejection = createEmailTakenResponse();
+            }
+            if (rejection == null) {
+                accepted.add(i);
+                report.add(null);
+            } else {
+                report.add(batchItemResult(i, rejection.build()));
+            }
+        }
+        log.info("Registering " + accepted.size() + " of a batch of " + members.size() + " members");
+        for (int start = 0; start < accepted.size(); start += BATCH_CHUNK_SIZE) {
+            int end = Math.min(start + BATCH_CHUNK_SIZE, accepted.size());
+            registerChunk(members, accepted.subList(start, end), report);
+        }
+        return report;
+    }
+
+    /**
+     * Imports members from newline-delimited JSON, one member per line, without holding the upload in memory. The
+     * response streams back, also as newline-delimited JSON, a line for each rejected record (with its line
+     * {@code record} number, {@code status} and {@code errors}), a {@code progress} line after each committed chunk,
+     * and a final {@code done} line with the totals. See {@link MemberImportStreamingOutput}.
+     */
+    @POST
+    @Path("/import")
+    @Consumes(NDJSON)
+    @Produces(NDJSON)
+    public StreamingOutput importMembers(InputStream body) {
+        return new MemberImportStreamingOutput(log, json, body, memberImport, new MemberImportStreamingOutput.RecordChecks() {
+            @Override
+            public Response.ResponseBuilder check(Member member) {
+                return validateMemberAndHandleExceptions(member);
+            }
+
+            @Override
+            public Response.ResponseBuilder failure(Exception e) {
+                return handleServerException(e);
+            }
+        });
+    }
+
+    private List<Map<String, String>> validateInParallel(List<Member> members) {
+        int slices = Math.max(1, Math.min(
+            Runtime.getRuntime().availableProcessors(), members.size() / VALIDATION_SLICE_SIZE));
+        int sliceSize = (members.size() + slices - 1) / slices;
+        List<Future<List<Map<String, String>>>> futures = new ArrayList<Future<List<Map<String, String>>>>(slices);
+        for (int start = 0; start < members.size(); start += sliceSize) {
+            List<Member> slice = members.subList(start, Math.min(start + sliceSize, members.size()));
+            futures.add(batchRegistration.validateAll(new ArrayList<Member>(slice)));
+        }
+        List<Map<String, String>> violations = new ArrayList<Map<String, String>>(members.size());
+        try {
+            for (Future<List<Map<String, String>>> future : futures) {
+                violations.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebApplicationException(e, Response.Status.SERVICE_UNAVAILABLE);
+        } catch (ExecutionException e) {
+            throw new WebApplicationException(e.getCause());
+        }
+        return violations;
+    }
+
+    private void registerChunk(List<Member> members, List<Integer> chunk, List<Map<String, Object>> report) {
+        List<Member> chunkMembers = new ArrayList<Member>(chunk.size());
+        for (int i : chunk) {
+            chunkMembers.add(members.get(i));
+        }
+        List<Exception> failures = batchRegistration.registerAllOrEach(chunkMembers);
+        for (int j = 0; j < chunk.size(); j++) {
+            int i = chunk.get(j);
+            report.set(i, failures.get(j) == null
+                ? batchItemCreated(i, members.get(i))
+                : batchItemResult(i, handleServerException(failures.get(j)).build()));
+        }
+    }
+
+    private Map<String, Object> batchItemCreated(int index, Member member) {
+        return ImmutableMap.<String, Object>of("index", index, "status", Response.Status.OK.getStatusCode(),
+            "id", member.getId());
+    }
+
+    private Map<String, Object> batchItemResult(int index, Response response) {
+        return ImmutableMap.<String, Object>of("index", index, "status", response.getStatus(),
+            "errors", response.getEntity());
+    }
+
     @PATCH
     @Consumes("application/json-patch")
     @Path("/{id:[0-9][0-9]*}")
-    public Response patchMember(@PathParam("id") long id, JsonPatchRequest patch) {
-        log.info("received patch for member " + id + ": \n" + patch);
-        Member originalMember = lookupMemberById(id);
-        Member updatedMember = patch.apply(originalMember);
-        return updateMember(id, updatedMember);
+    public Response patchMember(@PathParam("id") long id, JsonPatchRequest patch, @Context Request request) {
+        return update(id, patchUpdate(patch), notFoundEntity(id), request);
+    }
+
+    /**
+     * Updates a member from a JSON Merge Patch, which names just the properties to change; null clears a property.
+     * Preconditions and responses are as for {@link #patchMember(long, JsonPatchRequest, Request)}.
+     */
+    @PATCH
+    @Consumes(MemberMergePatch.MEDIA_TYPE)
+    @Path("/{id:[0-9][0-9]*}")
+    public Response mergePatchMember(@PathParam("id") long id, MemberMergePatch patch, @Context Request request) {
+        return update(id, patch, notFoundEntity(id), request);
+    }
+
+
+    /**
+     * Patches many members at once; see {@link BulkJsonPatchRequest} for the accepted forms. The members are loaded
+     * with one query and updated in one transaction, with updates sent in JDBC batches.
+     * <p/>
+     * The response is 200 with a report holding, for each member in request order, its {@code id}, a {@code status}
+     * (as {@link #patchMember(long, JsonPatchRequest, Request)} would answer) and, for a failure, the {@code errors}.
+     * A patch that cannot be applied does not stop the others.
+     */
+    @PATCH
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<Map<String, Object>> patchMembers(BulkJsonPatchRequest bulkPatch) {
+        Map<Long, JsonPatchRequest> patches = bulkPatch.getPatches();
+        if (patches.isEmpty()) {
+            throw badRequest("a bulk patch must name at least one member");
+        }
+        if (patches.size() > MAX_BULK_PATCH_SIZE) {
+            throw badRequest("a bulk patch can name at most " + MAX_BULK_PATCH_SIZE + " members");
+        }
+        log.info("received patches for " + patches.size() + " members");
+        Map<Long, CheckedUpdate> updates = new LinkedHashMap<Long, CheckedUpdate>();
+        for (Map.Entry<Long, JsonPatchRequest> patch : patches.entrySet()) {
+            updates.put(patch.getKey(), new CheckedUpdate(patch.getKey(), patchUpdate(patch.getValue()), null));
+        }
+
+        List<Map<String, Object>> report = new ArrayList<Map<String, Object>>(updates.size());
+        Map<Long, Member> found;
+        try {
+            found = batchRegistration.updateAll(updates);
+        } catch (Exception e) {
+            // most likely a concurrent change took one of the new emails; find out which patch it was
+            log.info("Bulk patch failed, patching members one at a time: " + e.getMessage());
+            for (Map.Entry<Long, JsonPatchRequest> patch : patches.entrySet()) {
+                long id = patch.getKey();
+                Response result = update(id, patchUpdate(patch.getValue()), notFoundEntity(id), null);
+                report.add(bulkPatchItemResult(id, result));
+            }
+            return report;
+        }
+        for (Map.Entry<Long, CheckedUpdate> update : updates.entrySet()) {
+            long id = update.getKey();
+            Response result;
+            if (!found.containsKey(id)) {
+                result = Response.status(Response.Status.NOT_FOUND).entity(notFoundEntity(id)).build();
+            } else if (update.getValue().rejection != null) {
+                result = update.getValue().rejection.build();
+            } else {
+                result = Response.status(Response.Status.NO_CONTENT).build();
+            }
+            report.add(bulkPatchItemResult(id, result));
+        }
+        return report;
+    }
+
+    private MemberUpdate patchUpdate(final JsonPatchRequest patch) {
+        return new MemberUpdate() {
+            @Override
+            public Member apply(Member current) {
+                return patch.apply(current);
+            }
+        };
+    }
+
+    private Map<String, String> notFoundEntity(long id) {
+        return ImmutableMap.of("error", "there is no member whose id is " + id);
     }
 
+    private Map<String, Object> bulkPatchItemResult(long id, Response response) {
+        Map<String, Object> item = new LinkedHashMap<String, Object>();
+        item.put("id", id);
+        item.put("status", response.getStatus());
+        if (response.getEntity() != null) {
+            item.put("errors", response.getEntity());
+        }
+        return item;
+    }
 
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
     @Path("/{id:[0-9][0-9]*}")
-    public Response updateMember(@PathParam("id") long id, Member updatedMember) {
-        checkExists(id);
-        checkIdPresent(updatedMember);
-        checkIdNotChanged(id, updatedMember);
-
-        Response.ResponseBuilder builder = validateMemberAndHandleExceptions(updatedMember);
+    public Response updateMember(
+            @PathParam("id") long id,
+            final Member updatedMember,
+            @Context Request request) {
+        MemberUpdate replace = new MemberUpdate() {
+            @Override
+            public Member apply(Member current) {
+                return updatedMember;
+            }
+        };
+        return update(id, replace, ImmutableMap.of(
+            "error", "there is no member whose id is " + id,
+            "note", "this server only supports PUT for resource updates, not resource creation"), request);
+    }
 
-        if (builder != null)
-            return builder.build();
+    /**
+     * Runs an update as one transaction that loads the member once: the existence check is that load, and the
+     * {@code If-Match}, id, validation and email checks all run against the loaded state, through a
+     * {@link CheckedUpdate}. The UPDATE itself only matches the loaded version, so a concurrent change that commits
+     * after the load also ends in 412 Precondition Failed.
+     */
+    private Response update(long id, MemberUpdate update, Map<String, String> notFoundEntity, Request request) {
+        CheckedUpdate checkedUpdate = new CheckedUpdate(id, update, request);
+        Member updated;
         try {
-            registration.update(updatedMember);
-            // Create an "ok" response
-            builder = Response.status(Response.Status.NO_CONTENT);
+            updated = registration.update(id, checkedUpdate);
         } catch (Exception e) {
-            builder = handleServerException(e);
+            return handleServerException(e).build();
         }
-
-        return builder.build();
+        if (updated == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity(notFoundEntity).build();
+        }
+        if (checkedUpdate.rejection != null) {
+            return checkedUpdate.rejection.build();
+        }
+        // Create an "ok" response, with the tag of the new version
+        return Response.status(Response.Status.NO_CONTENT).tag(versions.memberTag(updated)).build();
     }
 
-    private void checkExists(long id) {
-        if (repository.findById(id) == null)
-            throw new WebApplicationException(
-                Response
-                    .status(Response.Status.NOT_FOUND)
-                    .entity(ImmutableMap.of(
-                        "error", "there is no member whose id is " + id,
-                        "note", "this server only supports PUT for resource updates, not resource creation"))
-                    .build()
-            );
+    /**
+     * Checks the new state computed by an update before it is applied. As this runs inside the update's
+     * transaction, a problem is recorded as a rejection instead of being thrown.
+     */
+    private class CheckedUpdate implements MemberUpdate {
+
+        private final long id;
+
+        private final MemberUpdate update;
+
+        private final Request request;
+
+        Response.ResponseBuilder rejection;
+
+        /**
+         * @param request the request whose {@code If-Match} to check, or null for none
+         */
+        CheckedUpdate(long id, MemberUpdate update, Request request) {
+            this.id = id;
+            this.update = update;
+            this.request = request;
+        }
+
+        @Override
+        public Member apply(Member current) {
+            try {
+                if (request != null) {
+                    rejection = request.evaluatePreconditions(versions.memberTag(current));
+                    if (rejection != null) {
+                        return null;
+                    }
+                }
+                Member updatedMember = update.apply(current);
+                checkIdPresent(updatedMember);
+                checkIdNotChanged(id, updatedMember);
+                // the stored state was valid, so only what changed needs checking
+                rejection = validateChanges(updatedMember, MemberField.changedBetween(current, updatedMember));
+                return rejection == null ? updatedMember : null;
+            } catch (WebApplicationException e) {
+                rejection = Response.fromResponse(e.getResponse());
+                return null;
+            }
+        }
     }
 
     private void checkIdPresent(Member updatedMember) {
@@ -182,28 +771,54 @@ public class MemberResourceRESTService {
     }
 
     private Response.ResponseBuilder validateMemberAndHandleExceptions(Member member) {
-        Response.ResponseBuilder builder = null;
-
-        try {
-            // Validates member using bean validation
-            validateMember(member);
-            builder = null;
-        } catch (ConstraintViolationException ce) {
+        // Validates member using its compiled bean validation plan
+        Map<String, String> violations = memberValidator.validate(member);
+        if (!violations.isEmpty()) {
             // Handle bean validation issues
-            builder = createViolationResponse(ce.getConstraintViolations());
-        } catch (ValidationException e) {
+            return createViolationResponse(violations);
+        }
+        // Check the uniqueness of the email address
+        if (emailAlreadyExists(member.getId(), member.getEmail())) {
             // Handle the unique constrain violation
-            Map<String, String> responseObj = new HashMap<String, String>();
-            responseObj.put("email", "Email taken");
-            builder = Response
-                .status(Response.Status.CONFLICT)
-                .entity(responseObj)
-                .type(MediaType.APPLICATION_JSON_TYPE);
+            return createEmailTakenResponse();
         }
-        return builder;
+        return null;
+    }
+
+    /**
+     * Validates the given changed properties of a member, and checks the email for uniqueness only if it changed.
+     */
+    private Response.ResponseBuilder validateChanges(Member member, Set<MemberField> changed) {
+        Map<String, String> violations = memberValidator.validate(member, changed);
+        if (!violations.isEmpty()) {
+            return createViolationResponse(violations);
+        }
+        if (changed.contains(MemberField.EMAIL) && emailAlreadyExists(member.getId(), member.getEmail())) {
+            return createEmailTakenResponse();
+        }
+        return null;
+    }
+
+    private Response.ResponseBuilder createEmailTakenResponse() {
+        Map<String, String> responseObj = new HashMap<String, String>();
+        responseObj.put("email", "Email taken");
+        return Response
+            .status(Response.Status.CONFLICT)
+            .entity(responseObj)
+            .type(MediaType.APPLICATION_JSON_TYPE);
     }
 
     private Response.ResponseBuilder handleServerException(Exception e) {
+        if (isConstraintViolation(e)) {
+            // the email index missed a taken email (see emailAlreadyExists), and the unique constraint caught it
+            return createEmailTakenResponse();
+        }
+        if (isOptimisticLockFailure(e)) {
+            // the member changed between our load and our update
+            return Response
+                .status(Response.Status.PRECONDITION_FAILED)
+                .entity(ImmutableMap.of("error", "the member was changed concurrently"));
+        }
         Response.ResponseBuilder builder;// Handle generic exceptions
         Map<String, String> responseObj = new HashMap<String, String>();
         responseObj.put("error", e.getMessage());
@@ -211,73 +826,67 @@ public class MemberResourceRESTService {
         return builder;
     }
 
-    /**
-     * <p>
-     * Validates the given Member variable and throws validation exceptions based on the type of error. If the error is standard
-     * bean validation errors then it will throw a ConstraintValidationException with the set of the constraints violated.
-     * </p>
-     * <p>
-     * If the error is caused because an existing member with the same email is registered it throws a regular validation
-     * exception so that it can be interpreted separately.
-     * </p>
-     *
-     * @param member Member to be validated
-     * @throws ConstraintViolationException If Bean Validation errors exist
-     * @throws ValidationException          If member with the same email already exists
-     */
-    private void validateMember(Member member) throws ConstraintViolationException, ValidationException {
-        // Create a bean validator and check for issues.
-        Set<ConstraintViolation<Member>> violations = validator.validate(member);
-
-        if (!violations.isEmpty()) {
-            throw new ConstraintViolationException(new HashSet<ConstraintViolation<?>>(violations));
+    private boolean isOptimisticLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        // Check the uniqueness of the email address
-        if (emailAlreadyExists(member.getId(), member.getEmail())) {
-            throw new ValidationException("Unique Email Violation");
+    private boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof org.hibernate.exception.ConstraintViolationException) {
+                return true;
+            }
         }
+        return false;
     }
 
     /**
      * Creates a JAX-RS "Bad Request" response including a map of all violation fields, and their message. This can then be used
      * by clients to show violations.
      *
-     * @param violations A set of violations that needs to be reported
+     * @param violations The message for each invalid property
      * @return JAX-RS response containing all violations
      */
-    private Response.ResponseBuilder createViolationResponse(Set<ConstraintViolation<?>> violations) {
+    private Response.ResponseBuilder createViolationResponse(Map<String, String> violations) {
         log.fine("Validation completed. violations found: " + violations.size());
 
-        Map<String, String> responseObj = new HashMap<String, String>();
-
-        for (ConstraintViolation<?> violation : violations) {
-            responseObj.put(violation.getPropertyPath().toString(), violation.getMessage());
-        }
-
         return Response
             .status(Response.Status.BAD_REQUEST)
-            .entity(responseObj)
+            .entity(violations)
             .type(MediaType.APPLICATION_JSON_TYPE);
     }
 
     /**
      * Checks if a member with the same email address is already registered. This is the only way to easily capture the
-     * "@UniqueConstraint(columnNames = "email")" constraint from the Member class.
+     * "@UniqueConstraint(columnNames = "email")" constraint from the Member class. The answer usually comes from the
+     * in-memory {@link MemberEmailIndex}; the constraint itself still catches concurrent registrations of one email.
      *
      * @param newMemberId
      * @param email       The email to check
      * @return True if the email already exists, and false otherwise
      */
     public boolean emailAlreadyExists(Long newMemberId, String email) {
-        Member member = null;
-        try {
-            member = repository.findByEmail(email);
-        } catch (NoResultException e) {
-            // ignore
+        // a new email, the common case, is settled by the index's Bloom filter without a query
+        if (!emailIndex.mightContain(email)) {
+            return false;
+        }
+        Long existingId = emailIndex.findId(email);
+        if (existingId == null) {
+            // a Bloom filter false positive, or a change the index has not seen
+            Member member = null;
+            try {
+                member = repository.findByEmail(email);
+            } catch (NoResultException e) {
+                // ignore
+            }
+            existingId = member == null ? null : member.getId();
         }
-        if (member != null) {
-            return newMemberId == null || !newMemberId.equals(member.getId());
+        if (existingId != null) {
+            return newMemberId == null || !newMemberId.equals(existingId);
         }
         return false;
     }
@@ -0,0 +1,24 @@
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import javax.ws.rs.core.Response;
+
+/**
+ * see <a href="http://tools.ietf.org/html/rfc2616#section-10.4.14">HTTP/1.1 specification section 10.4.14 (definition for "Request Entity Too Large")</a>;
+ * JAX-RS 1.1 has no constant for it
+ */
+public class RequestEntityTooLargeStatusType implements Response.StatusType {
+    @Override
+    public int getStatusCode() {
+        return 413;
+    }
+
+    @Override
+    public Response.Status.Family getFamily() {
+        return Response.Status.Family.CLIENT_ERROR;
+    }
+
+    @Override
+    public String getReasonPhrase() {
+        return "Request Entity Too Large";
+    }
+}
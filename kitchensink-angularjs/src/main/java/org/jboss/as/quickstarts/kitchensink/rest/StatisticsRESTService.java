@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.rest;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.Session;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.jboss.as.quickstarts.kitchensink.audit.MemberAuditLog;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports runtime statistics for monitoring, such as cache hit and miss counts. The counts are cumulative since
+ * startup.
+ */
+@Path("/stats")
+@RequestScoped
+public class StatisticsRESTService {
+
+    @Inject
+    private EntityManager em;
+
+    @Inject
+    private MemberAuditLog auditLog;
+
+    /**
+     * Reports the hits, misses and puts of each second-level cache region, of the natural id cache and of the query
+     * cache.
+     */
+    @GET
+    @Path("/cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> cacheStatistics() {
+        Statistics statistics = em.unwrap(Session.class).getSessionFactory().getStatistics();
+        Map<String, Object> regions = new LinkedHashMap<String, Object>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+            regions.put(region, ImmutableMap.of(
+                "hits", regionStatistics.getHitCount(),
+                "misses", regionStatistics.getMissCount(),
+                "puts", regionStatistics.getPutCount(),
+                "elementsInMemory", regionStatistics.getElementCountInMemory()));
+        }
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("enabled", statistics.isStatisticsEnabled());
+        result.put("regions", regions);
+        result.put("naturalIdCache", ImmutableMap.of(
+            "hits", statistics.getNaturalIdCacheHitCount(),
+            "misses", statistics.getNaturalIdCacheMissCount(),
+            "puts", statistics.getNaturalIdCachePutCount()));
+        result.put("queryCache", ImmutableMap.of(
+            "hits", statistics.getQueryCacheHitCount(),
+            "misses", statistics.getQueryCacheMissCount(),
+            "puts", statistics.getQueryCachePutCount()));
+        return result;
+    }
+
+    /**
+     * Reports how often a PATCH body was found among the recently parsed json patches.
+     */
+    @GET
+    @Path("/patches")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> patchCacheStatistics() {
+        CacheStats stats = JsonPatchRequestReader.cache.stats();
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictions", stats.evictionCount());
+        result.put("size", JsonPatchRequestReader.cache.size());
+        result.put("averageBuildNanos", stats.averageLoadPenalty());
+        return result;
+    }
+
+    /**
+     * Reports how many member mutations the audit log has written, dropped because its buffer was full, and has yet
+     * to write.
+     */
+    @GET
+    @Path("/audit")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> auditStatistics() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("enabled", auditLog.isEnabled());
+        result.put("written", auditLog.getRecordsWritten());
+        result.put("dropped", auditLog.getDropCount());
+        result.put("pending", auditLog.getPendingCount());
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Registers and updates members in bulk. Each call to {@link #registerAll(List)} or {@link #updateAll(Map)} is one
+ * transaction, whose statements are sent to the database in JDBC batches (see hibernate.jdbc.batch_size in
+ * persistence.xml).
+ */
+@Stateless
+public class MemberBatchRegistration {
+
+    /**
+     * The number of inserts flushed at a time; this matches hibernate.jdbc.batch_size, so each flush is one batch.
+     */
+    static final int FLUSH_SIZE = 50;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private EntityManager em;
+
+    @Inject
+    private MemberValidator validator;
+
+    @Inject
+    private MemberRepository repository;
+
+    @Inject
+    @Registered
+    private Event<Member> memberRegisteredEventSrc;
+
+    @Inject
+    @Updated
+    private Event<Member> memberUpdatedEventSrc;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    /**
+     * Validates members on a container thread, so that slices of a batch can be validated in parallel.
+     *
+     * @return the violations of each member, in order, as {@link MemberValidator#validate(Member)} reports them
+     */
+    @Asynchronous
+    public Future<List<Map<String, String>>> validateAll(List<Member> members) {
+        List<Map<String, String>> violations = new ArrayList<Map<String, String>>(members.size());
+        for (Member member : members) {
+            violations.add(validator.validate(member));
+        }
+        return new AsyncResult<List<Map<String, String>>>(violations);
+    }
+
+    /**
+     * Persists all the given members in a new transaction, so that a failure only rolls back these members. The
+     * persistence context is flushed and cleared every {@link #FLUSH_SIZE} members to keep it small.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void registerAll(List<Member> members) {
+        log.info("Registering " + members.size() + " members");
+        int pending = 0;
+        for (Member member : members) {
+            em.persist(member);
+            memberRegisteredEventSrc.fire(member);
+            if (++pending == FLUSH_SIZE) {
+                em.flush();
+                em.clear();
+                pending = 0;
+            }
+        }
+    }
+
+    /**
+     * Persists the given members in one transaction as {@link #registerAll(List)} does, unless that fails; then each
+     * member is persisted in a transaction of its own, so that one bad member (most likely one whose email was taken
+     * concurrently) does not fail the others.
+     *
+     * @return for each member, in order, the failure to persist it, or null if it was persisted
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public List<Exception> registerAllOrEach(List<Member> members) {
+        // through the container, so that each call gets its own transaction
+        MemberBatchRegistration transactional = sessionContext.getBusinessObject(MemberBatchRegistration.class);
+        List<Exception> failures = new ArrayList<Exception>(Collections.<Exception>nCopies(members.size(), null));
+        try {
+            transactional.registerAll(members);
+        } catch (Exception e) {
+            log.info("Registering " + members.size() + " members failed, registering them one at a time: "
+                + e.getMessage());
+            for (int i = 0; i < members.size(); i++) {
+                Member member = members.get(i);
+                // the rolled back insert left a generated id behind
+                member.setId(null);
+                try {
+                    transactional.registerAll(Collections.singletonList(member));
+                } catch (Exception memberException) {
+                    failures.set(i, memberException);
+                }
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Applies an update to each of the given members, as {@link MemberRegistration#update(long, MemberUpdate)} does
+     * for one, in a single transaction. The members are loaded with one query, and the changes are flushed every
+     * {@link #FLUSH_SIZE} members.
+     *
+     * @return the members that were found, updated or not, by id
+     */
+    public Map<Long, Member> updateAll(Map<Long, ? extends MemberUpdate> updates) {
+        Map<Long, Member> found = new HashMap<Long, Member>();
+        for (Member member : repository.findByIds(updates.keySet())) {
+            found.put(member.getId(), member);
+        }
+        log.info("Updating " + found.size() + " of " + updates.size() + " members");
+        int pending = 0;
+        for (Map.Entry<Long, ? extends MemberUpdate> entry : updates.entrySet()) {
+            Member member = found.get(entry.getKey());
+            if (member == null) {
+                continue;
+            }
+            Member updated = entry.getValue().apply(MemberRegistration.copyOf(member));
+            if (!MemberRegistration.changes(member, updated)) {
+                continue;
+            }
+            MemberRegistration.copyState(updated, member);
+            memberUpdatedEventSrc.fire(member);
+            if (++pending == FLUSH_SIZE) {
+                em.flush();
+                pending = 0;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Maintains the total number of members, so it can be reported without a {@code COUNT(*)} per request.
+ * <p/>
+ * The count is taken from the database at startup, incremented for each committed registration, and re-synced from
+ * the database every few minutes to correct any drift, such as rows written by other means.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MemberCounter {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private MemberRepository repository;
+
+    private final AtomicLong count = new AtomicLong();
+
+    public long count() {
+        return count.get();
+    }
+
+    public void onMemberRegistered(@Observes(during = TransactionPhase.AFTER_SUCCESS) @Registered final Member member) {
+        count.incrementAndGet();
+    }
+
+    @PostConstruct
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void resync() {
+        long counted = repository.countAll();
+        long previous = count.getAndSet(counted);
+        if (previous != counted) {
+            log.fine("member count re-synced from " + previous + " to " + counted);
+        }
+    }
+}
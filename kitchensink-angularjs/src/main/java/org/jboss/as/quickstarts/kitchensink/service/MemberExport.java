@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.data.MemberCallback;
+import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
+import org.jboss.as.quickstarts.kitchensink.data.MemberSortKey;
+
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import java.io.IOException;
+
+/**
+ * Streams the member table to a callback. This is an EJB so that the scan runs inside a single transaction, which
+ * keeps the database cursor open until the last row has been handed over.
+ */
+@Stateless
+public class MemberExport {
+
+    static final int FETCH_SIZE = 500;
+
+    @Inject
+    private MemberRepository repository;
+
+    public void exportAll(MemberSortKey sortKey, MemberCallback callback) throws IOException {
+        repository.scrollAll(sortKey, FETCH_SIZE, callback);
+    }
+}
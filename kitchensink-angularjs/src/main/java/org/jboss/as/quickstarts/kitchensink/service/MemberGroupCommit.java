@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.EJBException;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for registrations: concurrent registrations are queued and persisted together, in one transaction,
+ * and each caller returns once the transaction holding its member has committed.
+ * <p/>
+ * There is no background thread. The first waiting caller becomes the leader: it waits up to
+ * {@code kitchensink.groupCommit.maxDelayMillis} (default 5) for the queue to reach
+ * {@code kitchensink.groupCommit.maxBatch} (default 100) registrations, then commits them through
+ * {@link MemberBatchRegistration} on behalf of everyone queued, while the others wait for their result.
+ * <p/>
+ * This is off unless the {@code kitchensink.groupCommit} system property is {@code true}; see
+ * {@link MemberRegistration#register(Member)}.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+// callers are suspended from their transaction while waiting; the batch commits in its own
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class MemberGroupCommit {
+
+    static final boolean ENABLED = Boolean.getBoolean("kitchensink.groupCommit");
+
+    static final int MAX_BATCH = Integer.getInteger("kitchensink.groupCommit.maxBatch", 100);
+
+    static final long MAX_DELAY_MILLIS = Long.getLong("kitchensink.groupCommit.maxDelayMillis", 5);
+
+    /**
+     * A queued registration, completed by whichever caller commits it.
+     */
+    private static class PendingRegistration {
+
+        final Member member;
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile Exception failure;
+
+        PendingRegistration(Member member) {
+            this.member = member;
+        }
+
+        void complete(Exception failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+    }
+
+    @Inject
+    private MemberBatchRegistration batchRegistration;
+
+    /**
+     * Guarded by itself; signalled when it holds a full batch.
+     */
+    private final Queue<PendingRegistration> queue = new ArrayDeque<PendingRegistration>();
+
+    /**
+     * Guarded by {@link #queue}.
+     */
+    private boolean leaderActive;
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Registers a member as part of the next group, returning once that group has committed.
+     *
+     * @throws RuntimeException the failure to persist this member, if any
+     */
+    public void register(Member member) {
+        PendingRegistration pending = new PendingRegistration(member);
+        synchronized (queue) {
+            queue.add(pending);
+            if (queue.size() >= MAX_BATCH) {
+                queue.notifyAll();
+            }
+        }
+        boolean interrupted = false;
+        while (pending.done.getCount() > 0) {
+            try {
+                // lead the next group, unless someone else is; a leader that ends up leaving us out hands over
+                if (becomeLeader()) {
+                    try {
+                        commit(collectGroup());
+                    } finally {
+                        resignLeader();
+                    }
+                } else {
+                    pending.done.await(MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                if (withdraw(pending)) {
+                    Thread.currentThread().interrupt();
+                    throw new EJBException("interrupted while waiting for a group commit", e);
+                }
+                // a group already holds the member, so its outcome is on its way and must be reported
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (pending.failure instanceof RuntimeException) {
+            throw (RuntimeException) pending.failure;
+        }
+        if (pending.failure != null) {
+            throw new EJBException(pending.failure);
+        }
+    }
+
+    /**
+     * @return whether the registration was still queued, and so will not be committed
+     */
+    private boolean withdraw(PendingRegistration pending) {
+        synchronized (queue) {
+            return queue.remove(pending);
+        }
+    }
+
+    private boolean becomeLeader() {
+        synchronized (queue) {
+            if (leaderActive || queue.isEmpty()) {
+                return false;
+            }
+            leaderActive = true;
+            return true;
+        }
+    }
+
+    private void resignLeader() {
+        synchronized (queue) {
+            leaderActive = false;
+        }
+    }
+
+    /**
+     * Waits until the queue holds a full batch or the delay has passed, then takes up to a batch from it.
+     */
+    private List<PendingRegistration> collectGroup() throws InterruptedException {
+        synchronized (queue) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+            long remaining;
+            while (queue.size() < MAX_BATCH && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+            }
+            List<PendingRegistration> group = new ArrayList<PendingRegistration>(Math.min(queue.size(), MAX_BATCH));
+            while (!queue.isEmpty() && group.size() < MAX_BATCH) {
+                group.add(queue.poll());
+            }
+            return group;
+        }
+    }
+
+    private void commit(List<PendingRegistration> group) {
+        List<Member> members = new ArrayList<Member>(group.size());
+        for (PendingRegistration pending : group) {
+            members.add(pending.member);
+        }
+        // one bad member must not fail the others
+        List<Exception> failures;
+        try {
+            failures = batchRegistration.registerAllOrEach(members);
+        } catch (RuntimeException e) {
+            // such as no connection to be had; everyone in the group is waiting for an outcome
+            for (PendingRegistration pending : group) {
+                pending.complete(e);
+            }
+            return;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).complete(failures.get(i));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * The writing half of a streaming import: takes records from a bounded queue, which the reading half fills, and
+ * registers them in chunks through {@link MemberBatchRegistration}. A full queue blocks the reader, so an import
+ * holds at most the queue's capacity in memory however large it is.
+ */
+@Stateless
+// each chunk is its own transaction; the import as a whole is not one
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class MemberImport {
+
+    public static final int CHUNK_SIZE = 500;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private MemberBatchRegistration batchRegistration;
+
+    /**
+     * Writes records from the queue until {@link MemberImportRecord#END} is taken.
+     */
+    @Asynchronous
+    public Future<Long> writeFrom(BlockingQueue<MemberImportRecord> queue, MemberImportListener listener) {
+        long written = 0;
+        List<MemberImportRecord> chunk = new ArrayList<MemberImportRecord>(CHUNK_SIZE);
+        boolean end = false;
+        while (!end) {
+            try {
+                chunk.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warning("Import interrupted after " + written + " records");
+                break;
+            }
+            queue.drainTo(chunk, CHUNK_SIZE - 1);
+            if (chunk.get(chunk.size() - 1) == MemberImportRecord.END) {
+                chunk.remove(chunk.size() - 1);
+                end = true;
+            }
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, listener);
+                written += chunk.size();
+                chunk.clear();
+            }
+        }
+        log.info("Import wrote " + written + " records");
+        return new AsyncResult<Long>(written);
+    }
+
+    private void writeChunk(List<MemberImportRecord> chunk, MemberImportListener listener) {
+        List<Member> members = new ArrayList<Member>(chunk.size());
+        for (MemberImportRecord record : chunk) {
+            members.add(record.getMember());
+        }
+        List<Exception> failures = batchRegistration.registerAllOrEach(members);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (failures.get(i) == null) {
+                listener.registered(chunk.get(i));
+            } else {
+                listener.failed(chunk.get(i), failures.get(i));
+            }
+        }
+        listener.chunkWritten();
+    }
+}
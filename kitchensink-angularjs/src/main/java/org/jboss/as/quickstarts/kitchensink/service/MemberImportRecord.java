@@ -0,0 +1,47 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+/**
+ * A member read from an import, with its record number so that results can be reported against the input.
+ */
+public class MemberImportRecord {
+
+    /**
+     * Marks the end of an import's queue.
+     */
+    public static final MemberImportRecord END = new MemberImportRecord(-1, null);
+
+    private final long number;
+
+    private final Member member;
+
+    public MemberImportRecord(long number, Member member) {
+        this.number = number;
+        this.member = member;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public Member getMember() {
+        return member;
+    }
+}
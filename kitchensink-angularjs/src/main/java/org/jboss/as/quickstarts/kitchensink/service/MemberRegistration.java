@@ -16,35 +16,85 @@
  */
 package org.jboss.as.quickstarts.kitchensink.service;
 
+import org.jboss.as.quickstarts.kitchensink.data.MemberField;
 import org.jboss.as.quickstarts.kitchensink.model.Member;
 
 import javax.ejb.Stateless;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
-import java.util.logging.Logger;
 
 // The @Stateless annotation eliminates the need for manual transaction demarcation
+// Committed registrations and updates are recorded by MemberAuditLog, which observes the events fired here
 @Stateless
 public class MemberRegistration {
 
     @Inject
-    private Logger log;
+    private EntityManager em;
 
     @Inject
-    private EntityManager em;
+    @Registered
+    private Event<Member> memberRegisteredEventSrc;
 
     @Inject
-    private Event<Member> memberEventSrc;
+    @Updated
+    private Event<Member> memberUpdatedEventSrc;
 
+    @Inject
+    private MemberGroupCommit groupCommit;
+
+    /**
+     * Registers a member. With group commit enabled (see {@link MemberGroupCommit}), the member is persisted in a
+     * transaction shared with concurrent registrations, which has committed when this returns.
+     */
     public void register(Member member) {
-        log.info("Registering " + member.getName());
+        if (MemberGroupCommit.isEnabled()) {
+            groupCommit.register(member);
+            return;
+        }
         em.persist(member);
-        memberEventSrc.fire(member);
+        memberRegisteredEventSrc.fire(member);
+    }
+
+    /**
+     * Updates a member with a single load: the managed entity found here is handed (as a copy) to the update, and
+     * the state the update returns is copied back onto it, so no further lookup or merge is needed. An update that
+     * changes nothing fires no {@link Updated} event, as nothing is written.
+     *
+     * @return the updated member, or null if there is no member with the given id
+     */
+    public Member update(long id, MemberUpdate update) {
+        Member member = em.find(Member.class, id);
+        if (member == null) {
+            return null;
+        }
+        Member updated = update.apply(copyOf(member));
+        if (!changes(member, updated)) {
+            return member;
+        }
+        copyState(updated, member);
+        memberUpdatedEventSrc.fire(member);
+        return member;
+    }
+
+    /**
+     * @return whether the state an update returned differs from the stored member
+     */
+    static boolean changes(Member member, Member updated) {
+        return updated != null && !MemberField.changedBetween(member, updated).isEmpty();
+    }
+
+    static Member copyOf(Member member) {
+        Member copy = new Member();
+        copy.setId(member.getId());
+        copy.setVersion(member.getVersion());
+        copyState(member, copy);
+        return copy;
     }
 
-    public Member update(Member member) {
-        log.info("Updating " + member.getName());
-        return em.merge(member);
+    static void copyState(Member from, Member to) {
+        to.setName(from.getName());
+        to.setEmail(from.getEmail());
+        to.setPhoneNumber(from.getPhoneNumber());
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+/**
+ * Computes the new state of a member, for {@link MemberRegistration#update(long, MemberUpdate)}.
+ * <p/>
+ * This runs inside the update's transaction, after the member has been loaded, so it should report problems through
+ * its own state rather than by throwing: a runtime exception would be logged and wrapped by the EJB container.
+ */
+public interface MemberUpdate {
+
+    /**
+     * @param current a copy of the member as it is currently stored; changing it has no effect
+     * @return the member's new state, or null to leave the member unchanged
+     */
+    Member apply(Member current);
+}
@@ -0,0 +1,386 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.service;
+
+import org.jboss.as.quickstarts.kitchensink.data.MemberField;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintViolation;
+import javax.validation.MessageInterpolator;
+import javax.validation.ValidatorFactory;
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+import javax.validation.groups.Default;
+import javax.validation.metadata.BeanDescriptor;
+import javax.validation.metadata.ConstraintDescriptor;
+import javax.validation.metadata.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Validates members with a plan compiled at startup from the bean validation metadata of {@link Member}, instead of
+ * walking that metadata reflectively on every write.
+ * <p/>
+ * The standard constraints ({@code @NotNull}, {@code @Size}, {@code @Pattern}, {@code @Digits}) are checked directly,
+ * composed constraints such as {@code @NotEmpty} are flattened, and other constraints with a Hibernate Validator
+ * implementation (such as {@code @Email}) call that implementation's instance, created once. Messages are
+ * interpolated once, by the factory's interpolator, so they are the ones the validator itself would give. If
+ * {@link Member} ever uses something the plan cannot express (a class-level, cascaded or custom constraint, or a
+ * group), every member is validated by the factory's validator instead.
+ */
+@ApplicationScoped
+public class MemberValidator {
+
+    /**
+     * One compiled constraint; {@code value} is the property value, which may be null.
+     */
+    private interface Check {
+
+        boolean isValid(Object value);
+    }
+
+    private static class PropertyCheck {
+
+        final String property;
+
+        final MemberField field;
+
+        final Check check;
+
+        final String message;
+
+        PropertyCheck(String property, MemberField field, Check check, String message) {
+            this.property = property;
+            this.field = field;
+            this.check = check;
+            this.message = message;
+        }
+    }
+
+    private static final Set<MemberField> ALL_FIELDS = Collections.unmodifiableSet(EnumSet.allOf(MemberField.class));
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private ValidatorFactory validatorFactory;
+
+    /**
+     * The compiled checks, in declaration order, or null if the plan could not be compiled.
+     */
+    private List<PropertyCheck> plan;
+
+    @PostConstruct
+    void compile() {
+        BeanDescriptor bean = validatorFactory.getValidator().getConstraintsForClass(Member.class);
+        if (!bean.getConstraintDescriptors().isEmpty()) {
+            log.warning("Member has class-level constraints; validating members reflectively");
+            return;
+        }
+        List<PropertyCheck> checks = new ArrayList<PropertyCheck>();
+        for (PropertyDescriptor property : bean.getConstrainedProperties()) {
+            MemberField field;
+            try {
+                field = MemberField.fromAttribute(property.getPropertyName());
+            } catch (IllegalArgumentException e) {
+                field = null;
+            }
+            if (field == null || property.isCascaded() || property.getElementClass() != String.class) {
+                log.warning("cannot compile validation of Member." + property.getPropertyName()
+                    + "; validating members reflectively");
+                return;
+            }
+            for (ConstraintDescriptor<?> constraint : property.getConstraintDescriptors()) {
+                if (!compile(property.getPropertyName(), field, constraint, checks)) {
+                    log.warning("cannot compile " + constraint.getAnnotation() + " on Member."
+                        + property.getPropertyName() + "; validating members reflectively");
+                    return;
+                }
+            }
+        }
+        plan = checks;
+    }
+
+    /**
+     * Compiles a constraint into checks, each reporting the constraint's own message.
+     *
+     * @return false if the constraint cannot be compiled
+     */
+    private boolean compile(String property, MemberField field, ConstraintDescriptor<?> constraint,
+                            List<PropertyCheck> checks) {
+        if (constraint.getGroups().size() != 1 || !constraint.getGroups().contains(Default.class)) {
+            return false;
+        }
+        List<Check> parts = new ArrayList<Check>();
+        if (!compileParts(constraint, parts)) {
+            return false;
+        }
+        String message = interpolate(constraint);
+        if (constraint.isReportAsSingleViolation()) {
+            checks.add(new PropertyCheck(property, field, allOf(parts), message));
+            return true;
+        }
+        if (!parts.isEmpty()) {
+            checks.add(new PropertyCheck(property, field, parts.get(0), message));
+        }
+        for (ConstraintDescriptor<?> composing : constraint.getComposingConstraints()) {
+            if (!compile(property, field, composing, checks)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compiles the constraint's own check, and if it is reported as a single violation, those of the constraints it
+     * is composed of.
+     */
+    private boolean compileParts(ConstraintDescriptor<?> constraint, List<Check> parts) {
+        Check own = compileOwn(constraint);
+        if (own == null) {
+            return false;
+        }
+        parts.add(own);
+        if (constraint.isReportAsSingleViolation()) {
+            for (ConstraintDescriptor<?> composing : constraint.getComposingConstraints()) {
+                if (!compileParts(composing, parts)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Check compileOwn(ConstraintDescriptor<?> constraint) {
+        Annotation annotation = constraint.getAnnotation();
+        if (annotation instanceof NotNull) {
+            return new Check() {
+                @Override
+                public boolean isValid(Object value) {
+                    return value != null;
+                }
+            };
+        }
+        if (annotation instanceof Size) {
+            final int min = ((Size) annotation).min();
+            final int max = ((Size) annotation).max();
+            return new Check() {
+                @Override
+                public boolean isValid(Object value) {
+                    if (value == null) {
+                        return true;
+                    }
+                    int length = ((CharSequence) value).length();
+                    return length >= min && length <= max;
+                }
+            };
+        }
+        if (annotation instanceof Pattern) {
+            int flags = 0;
+            for (Pattern.Flag flag : ((Pattern) annotation).flags()) {
+                flags |= flag.getValue();
+            }
+            final java.util.regex.Pattern pattern =
+                java.util.regex.Pattern.compile(((Pattern) annotation).regexp(), flags);
+            return new Check() {
+                @Override
+                public boolean isValid(Object value) {
+                    return value == null || pattern.matcher((CharSequence) value).matches();
+                }
+            };
+        }
+        if (annotation instanceof Digits) {
+            final int integer = ((Digits) annotation).integer();
+            final int fraction = ((Digits) annotation).fraction();
+            return new Check() {
+                @Override
+                public boolean isValid(Object value) {
+                    return value == null || hasDigits(value.toString(), integer, fraction);
+                }
+            };
+        }
+        if (constraint.getConstraintValidatorClasses().isEmpty()) {
+            // a pure composition, such as @NotEmpty
+            return new Check() {
+                @Override
+                public boolean isValid(Object value) {
+                    return true;
+                }
+            };
+        }
+        return delegate(constraint);
+    }
+
+    /**
+     * Wraps the single Hibernate Validator implementation of a constraint. These do not use their context argument.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Check delegate(ConstraintDescriptor<?> constraint) {
+        if (constraint.getConstraintValidatorClasses().size() != 1) {
+            return null;
+        }
+        Class<? extends ConstraintValidator<?, ?>> validatorClass = constraint.getConstraintValidatorClasses().get(0);
+        if (!validatorClass.getName().startsWith("org.hibernate.validator.")) {
+            return null;
+        }
+        final ConstraintValidator validator;
+        try {
+            validator = validatorClass.newInstance();
+        } catch (Exception e) {
+            return null;
+        }
+        validator.initialize(constraint.getAnnotation());
+        return new Check() {
+            @Override
+            public boolean isValid(Object value) {
+                return validator.isValid(value, null);
+            }
+        };
+    }
+
+    private static Check allOf(final List<Check> checks) {
+        if (checks.size() == 1) {
+            return checks.get(0);
+        }
+        return new Check() {
+            @Override
+            public boolean isValid(Object value) {
+                for (Check check : checks) {
+                    if (!check.isValid(value)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * The rule of Hibernate Validator's {@code DigitsValidatorForString}, without parsing plain digit strings.
+     */
+    static boolean hasDigits(String value, int maxInteger, int maxFraction) {
+        int leadingZeros = 0;
+        int i = 0;
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (c == '0' && leadingZeros == i) {
+                leadingZeros++;
+            }
+        }
+        if (i > 0 && i == value.length()) {
+            // an integer: its precision is its length without leading zeros, but at least 1
+            return Math.max(1, value.length() - leadingZeros) <= maxInteger;
+        }
+        BigDecimal number;
+        try {
+            number = new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        int integerLength = number.precision() - number.scale();
+        int fractionLength = number.scale() < 0 ? 0 : number.scale();
+        return integerLength <= maxInteger && fractionLength <= maxFraction;
+    }
+
+    private String interpolate(final ConstraintDescriptor<?> constraint) {
+        String template = (String) constraint.getAttributes().get("message");
+        return validatorFactory.getMessageInterpolator().interpolate(template, new MessageInterpolator.Context() {
+            @Override
+            public ConstraintDescriptor<?> getConstraintDescriptor() {
+                return constraint;
+            }
+
+            @Override
+            public Object getValidatedValue() {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Validates a member against the default group.
+     *
+     * @return the message for each invalid property, or an empty map if the member is valid; a property that breaks
+     *         several constraints reports one of them, as {@code createViolationResponse} always has
+     */
+    public Map<String, String> validate(Member member) {
+        if (plan == null) {
+            return validateReflectively(member);
+        }
+        return validate(member, ALL_FIELDS);
+    }
+
+    /**
+     * Validates only the given properties of a member against the default group, such as the ones an update changed;
+     * the others are taken to be valid already.
+     *
+     * @return the message for each invalid property, as for {@link #validate(Member)}
+     */
+    public Map<String, String> validate(Member member, Set<MemberField> fields) {
+        if (plan == null) {
+            return validateReflectively(member, fields);
+        }
+        Map<String, String> violations = null;
+        for (PropertyCheck check : plan) {
+            if (fields.contains(check.field) && !check.check.isValid(check.field.valueOf(member))) {
+                if (violations == null) {
+                    violations = new HashMap<String, String>();
+                }
+                if (!violations.containsKey(check.property)) {
+                    violations.put(check.property, check.message);
+                }
+            }
+        }
+        return violations == null ? Collections.<String, String>emptyMap() : violations;
+    }
+
+    private Map<String, String> validateReflectively(Member member) {
+        Map<String, String> violations = new HashMap<String, String>();
+        for (ConstraintViolation<Member> violation : validatorFactory.getValidator().validate(member)) {
+            violations.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+        return violations;
+    }
+
+    private Map<String, String> validateReflectively(Member member, Set<MemberField> fields) {
+        Map<String, String> violations = new HashMap<String, String>();
+        for (MemberField field : fields) {
+            for (ConstraintViolation<Member> violation
+                    : validatorFactory.getValidator().validateProperty(member, field.getAttribute())) {
+                violations.put(violation.getPropertyPath().toString(), violation.getMessage());
+            }
+        }
+        return violations;
+    }
+}
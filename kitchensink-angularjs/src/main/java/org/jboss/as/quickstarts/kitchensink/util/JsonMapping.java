@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.fge.jackson.JacksonUtils;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+
+import java.util.List;
+
+/**
+ * The one {@link ObjectMapper} used for the application's JSON, together with readers and writers for members that
+ * are built once up front. Sharing the mapper means its serializer and deserializer caches are warmed up once, and the
+ * member readers and writers skip the per-call type lookup.
+ * <p/>
+ * CDI beans get it from {@link Resources}; classes that CDI does not create, such as JAX-RS providers, use
+ * {@link #shared()}, which is the same instance.
+ */
+public class JsonMapping {
+
+    private static final JsonMapping SHARED = new JsonMapping(new ObjectMapper()
+        // json-patch expects its own node factory, which keeps decimals exact
+        .setNodeFactory(JacksonUtils.nodeFactory())
+        .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS));
+
+    private final ObjectMapper mapper;
+
+    private final ObjectReader memberReader;
+
+    private final ObjectReader memberListReader;
+
+    private final ObjectWriter memberWriter;
+
+    private final ObjectWriter memberListWriter;
+
+    private final ObjectWriter memberElementWriter;
+
+    JsonMapping(ObjectMapper mapper) {
+        this.mapper = mapper;
+        TypeReference<List<Member>> memberList = new TypeReference<List<Member>>() {
+        };
+        this.memberReader = mapper.reader(Member.class);
+        this.memberListReader = mapper.reader(memberList);
+        this.memberWriter = mapper.writerWithType(Member.class);
+        this.memberListWriter = mapper.writerWithType(memberList);
+        this.memberElementWriter = memberWriter.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public static JsonMapping shared() {
+        return SHARED;
+    }
+
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    public ObjectReader getMemberReader() {
+        return memberReader;
+    }
+
+    public ObjectReader getMemberListReader() {
+        return memberListReader;
+    }
+
+    public ObjectWriter getMemberWriter() {
+        return memberWriter;
+    }
+
+    public ObjectWriter getMemberListWriter() {
+        return memberListWriter;
+    }
+
+    /**
+     * @return a member writer for writing members one after another to a generator, which does not flush after each
+     */
+    public ObjectWriter getMemberElementWriter() {
+        return memberElementWriter;
+    }
+}
@@ -23,6 +23,8 @@ import javax.enterprise.inject.spi.InjectionPoint;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * This class uses CDI to alias Java EE resources, such as the persistence context, to CDI beans
  * 
@@ -42,6 +44,16 @@ public class Resources {
     @PersistenceContext
     private EntityManager em;
 
+    @Produces
+    public JsonMapping produceJsonMapping() {
+        return JsonMapping.shared();
+    }
+
+    @Produces
+    public ObjectMapper produceObjectMapper() {
+        return JsonMapping.shared().getMapper();
+    }
+
     @Produces
     public Logger produceLog(InjectionPoint injectionPoint) {
         return Logger.getLogger(injectionPoint.getMember().getDeclaringClass().getName());
@@ -16,4 +16,6 @@
 --
 
 -- You can use this file to load seed data into the database using SQL statements
-insert into Member (id, name, email, phone_number) values (0, 'John Smith', 'john.smith@mailinator.com', '2125551212') 
\ No newline at end of file
+insert into Member (id, name, email, phone_number, version) values (0, 'John Smith', 'john.smith@mailinator.com', '2125551212', 0) 
+-- Keyset pagination orders by (name, id); email is already indexed by its unique constraint and id by the primary key
+create index member_name_id_idx on Member (name, id)
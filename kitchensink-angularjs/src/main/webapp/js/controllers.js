@@ -68,7 +68,7 @@ function MembersCtrl($scope, $http, Members) {
 
     $scope.edit = function(member) {
       $scope.editMember = member;
-      $scope.editMemberObserver = jsonpatch.observe(member);
+      $scope.editMemberOriginal = angular.copy(member);
     }
 
     $scope.resetEdit = function(member) {
@@ -84,9 +84,16 @@ function MembersCtrl($scope, $http, Members) {
       $scope.errorMessages = '';
       $scope.errors = {};
 
-      var diff = jsonpatch.generate($scope.editMemberObserver);
+      // a merge patch of the changed properties; unchanged ones are left out
+      var changes = {};
+      angular.forEach(['name', 'email', 'phoneNumber'], function(property) {
+        if ($scope.editMember[property] !== $scope.editMemberOriginal[property]) {
+          // a cleared field reads as undefined, which JSON would drop
+          changes[property] = $scope.editMember[property] === undefined ? null : $scope.editMember[property];
+        }
+      });
 
-      Members.update({memberId: $scope.editMember.id}, diff, function(data) {
+      Members.mergeUpdate({memberId: $scope.editMember.id}, changes, function(data) {
 
         // mark success on the registration form
         $scope.successMessages = [ 'Member Updated' ];
@@ -26,6 +26,12 @@ angular.module('membersService', ['ngResource']).
         method: "PATCH",
         isArray: true,
         headers:{'Content-Type':'application/json-patch'}
+      },
+      // sends just the changed properties, see MemberResourceRESTService.mergePatchMember
+      mergeUpdate: {
+        method: "PATCH",
+        isArray: true,
+        headers:{'Content-Type':'application/merge-patch+json'}
       }
     }
   );
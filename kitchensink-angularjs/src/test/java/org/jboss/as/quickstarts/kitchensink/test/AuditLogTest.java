@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditEventType;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditFileWriter;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditLogReader;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditOverflowPolicy;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditRecord;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditRecordFormat;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditRingBuffer;
+import org.jboss.as.quickstarts.kitchensink.audit.AuditSink;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.jboss.shrinkwrap.resolver.api.maven.Maven;
+import org.jboss.shrinkwrap.resolver.api.maven.PomEquippedResolveStage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(Arquillian.class)
+public class AuditLogTest {
+    @Deployment
+    public static Archive<?> createTestArchive() {
+        PomEquippedResolveStage resolver = Maven.resolver().offline().loadPomFromFile("pom.xml");
+
+        return ShrinkWrap.create(WebArchive.class, "test.war")
+                .addClasses(
+                    AuditEventType.class,
+                    AuditFileWriter.class,
+                    AuditLogReader.class,
+                    AuditOverflowPolicy.class,
+                    AuditRecord.class,
+                    AuditRecordFormat.class,
+                    AuditRingBuffer.class,
+                    AuditSink.class)
+                // the audit package uses Guava, which json-patch brings along
+                .addAsLibraries(resolver
+                    .resolve("com.github.fge:json-patch")
+                    .withTransitivity()
+                    .asFile());
+    }
+
+    Logger log = Logger.getLogger(getClass().getName());
+
+    File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("audit", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRecordsAreReadBackInOrderAcrossFiles() throws Exception {
+        AuditRingBuffer ringBuffer = new AuditRingBuffer(8, AuditOverflowPolicy.BLOCK);
+        AuditFileWriter writer = new AuditFileWriter(log, directory, 4, 10);
+        for (int i = 0; i < 6; i++) {
+            ringBuffer.offer(i == 0 ? AuditEventType.REGISTERED : AuditEventType.UPDATED, 1000 + i, 42, i);
+        }
+        assertEquals(6, ringBuffer.drainTo(writer));
+        writer.close();
+
+        assertEquals(2, directory.listFiles().length);
+        List<AuditRecord> records = AuditLogReader.read(directory);
+        assertEquals(6, records.size());
+        assertEquals(AuditEventType.REGISTERED, records.get(0).getType());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(1000 + i, records.get(i).getTimestampMillis());
+            assertEquals(42, records.get(i).getMemberId());
+            assertEquals(i, records.get(i).getVersion());
+        }
+    }
+
+    @Test
+    public void testDroppedEventsAreCounted() throws Exception {
+        AuditRingBuffer ringBuffer = new AuditRingBuffer(4, AuditOverflowPolicy.DROP);
+        for (int i = 0; i < 6; i++) {
+            boolean accepted = ringBuffer.offer(AuditEventType.UPDATED, 1000, i, 0);
+            assertEquals(i < 4, accepted);
+        }
+        assertEquals(2, ringBuffer.getDropCount());
+
+        final int[] dropped = new int[1];
+        int drained = ringBuffer.drainTo(new AuditSink() {
+            @Override
+            public void write(AuditEventType type, long timestampMillis, long memberId, long version, int count) {
+                if (type == AuditEventType.DROPPED) {
+                    dropped[0] += count;
+                }
+            }
+        });
+        assertEquals(4, drained);
+        assertEquals(2, dropped[0]);
+        assertFalse(ringBuffer.size() > 0);
+    }
+
+    @Test(timeout = 5000)
+    public void testBlockedProducersGiveUpWhenClosed() throws Exception {
+        final AuditRingBuffer ringBuffer = new AuditRingBuffer(1, AuditOverflowPolicy.BLOCK);
+        assertTrue(ringBuffer.offer(AuditEventType.REGISTERED, 1000, 1, 0));
+        final boolean[] accepted = { true };
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accepted[0] = ringBuffer.offer(AuditEventType.UPDATED, 1001, 1, 1);
+            }
+        });
+        producer.start();
+        ringBuffer.close();
+        producer.join();
+        assertFalse(accepted[0]);
+        assertEquals(1, ringBuffer.getDropCount());
+        assertFalse(ringBuffer.offer(AuditEventType.UPDATED, 1002, 1, 2));
+    }
+}
@@ -19,9 +19,17 @@ package org.jboss.as.quickstarts.kitchensink.test;
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.junit.Arquillian;
 import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.rest.BoundedInputStream;
+import org.jboss.as.quickstarts.kitchensink.rest.CompiledMemberPatch;
 import org.jboss.as.quickstarts.kitchensink.rest.JsonPatchRequest;
+import org.jboss.as.quickstarts.kitchensink.rest.JsonPatchRequestCache;
 import org.jboss.as.quickstarts.kitchensink.rest.JsonPatchRequestReader;
+import org.jboss.as.quickstarts.kitchensink.rest.MemberMergePatch;
+import org.jboss.as.quickstarts.kitchensink.rest.MemberMergePatchReader;
+import org.jboss.as.quickstarts.kitchensink.rest.RequestEntityTooLargeStatusType;
 import org.jboss.as.quickstarts.kitchensink.rest.UnprocessableEntityStatusType;
+import org.jboss.as.quickstarts.kitchensink.service.MemberUpdate;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
 import org.jboss.as.quickstarts.kitchensink.util.Resources;
 import org.jboss.shrinkwrap.api.Archive;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
@@ -43,6 +51,8 @@ import java.util.logging.Logger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 @RunWith(Arquillian.class)
@@ -58,8 +68,16 @@ public class JsonPatchRequestTest {
                 .addClasses(
                     Member.class,
                     JsonPatchRequest.class,
+                    CompiledMemberPatch.class,
                     JsonPatchRequestReader.class,
-                    UnprocessableEntityStatusType.class)
+                    JsonPatchRequestCache.class,
+                    BoundedInputStream.class,
+                    MemberMergePatch.class,
+                    MemberMergePatchReader.class,
+                    MemberUpdate.class,
+                    UnprocessableEntityStatusType.class,
+                    RequestEntityTooLargeStatusType.class,
+                    JsonMapping.class)
                 // Deploy our test datasource
                 .addAsLibraries(resolver
                     .resolve("com.github.fge:json-patch")
@@ -95,6 +113,62 @@ public class JsonPatchRequestTest {
         assertEquals("Jenny Doe", updatedMember.getName());
     }
 
+    @Test
+    public void testPatchApplicationOfSeveralOperations() throws Exception {
+        String patch =
+                "[" +
+                "{\"op\": \"test\", \"path\": \"/email\", \"value\": \"jane@mailinator.com\"}," +
+                "{\"op\": \"replace\", \"path\": \"/email\", \"value\": \"jenny@mailinator.com\"}," +
+                "{\"op\": \"remove\", \"path\": \"/phoneNumber\"}," +
+                "{\"op\": \"add\", \"path\": \"/phoneNumber\", \"value\": \"2125559876\"}" +
+                "]";
+
+        Member updatedMember = reader.buildJsonPatchRequest(patch).apply(member);
+
+        assertEquals("Jane Doe", updatedMember.getName());
+        assertEquals("jenny@mailinator.com", updatedMember.getEmail());
+        assertEquals("2125559876", updatedMember.getPhoneNumber());
+        assertEquals("jane@mailinator.com", member.getEmail());
+    }
+
+    @Test
+    public void testPatchApplicationWhenTestFails() throws Exception {
+        String patch =
+                "[" +
+                "{\"op\": \"test\", \"path\": \"/name\", \"value\": \"John Doe\"}," +
+                "{\"op\": \"replace\", \"path\": \"/name\", \"value\": \"Jenny Doe\"}" +
+                "]";
+
+        JsonPatchRequest request = reader.buildJsonPatchRequest(patch);
+        try {
+            request.apply(member);
+            fail("should have thrown exception");
+        }
+        catch (WebApplicationException e)
+        {
+            assertEquals(409, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void testPatchApplicationWhenReplacingARemovedProperty() throws Exception {
+        String patch =
+                "[" +
+                "{\"op\": \"remove\", \"path\": \"/name\"}," +
+                "{\"op\": \"replace\", \"path\": \"/name\", \"value\": \"Jenny Doe\"}" +
+                "]";
+
+        JsonPatchRequest request = reader.buildJsonPatchRequest(patch);
+        try {
+            request.apply(member);
+            fail("should have thrown exception");
+        }
+        catch (WebApplicationException e)
+        {
+            assertEquals(409, e.getResponse().getStatus());
+        }
+    }
+
     @Test
     public void testPatchApplicationWhenPatchDoesNotParse() throws Exception {
         String patch = "garbage";
@@ -171,4 +245,60 @@ public class JsonPatchRequestTest {
         }
     }
 
+    @Test
+    public void testRepeatedPatchesAreParsedOnce() throws Exception {
+        String patch = "[{\"op\": \"replace\", \"path\": \"/name\", \"value\": \"Jane  Q. Doe\"}]";
+        String reformatted = "[ {\n  \"op\":\"replace\",\n  \"path\":\"/name\",\n  \"value\":\"Jane  Q. Doe\"\n} ]";
+
+        JsonPatchRequest request = reader.buildJsonPatchRequest(patch);
+        assertSame(request, new JsonPatchRequestReader().buildJsonPatchRequest(patch));
+        // only identical bodies share an entry
+        JsonPatchRequest reformattedRequest = reader.buildJsonPatchRequest(reformatted);
+        assertNotSame(request, reformattedRequest);
+        assertEquals("Jane  Q. Doe", request.apply(member).getName());
+        assertEquals("Jane  Q. Doe", reformattedRequest.apply(member).getName());
+    }
+
+    @Test
+    public void testPatchWithTooManyOperationsIsRejected() throws Exception {
+        String operation = "{\"op\": \"test\", \"path\": \"/name\", \"value\": \"Jane Doe\"}";
+        StringBuilder patch = new StringBuilder("[").append(operation);
+        for (int i = 1; i < 1000; i++) {
+            patch.append(",").append(operation);
+        }
+        patch.append("]");
+
+        try {
+            reader.buildJsonPatchRequest(patch.toString());
+            fail("should have thrown exception");
+        }
+        catch (WebApplicationException e)
+        {
+            assertEquals(413, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void testMergePatchSetsAndClearsProperties() throws Exception {
+        MemberMergePatch patch = new MemberMergePatchReader().buildMemberMergePatch(
+            "{\"name\": \"Jane Q. Doe\", \"phoneNumber\": null}");
+
+        Member updatedMember = patch.apply(member);
+        assertEquals("Jane Q. Doe", updatedMember.getName());
+        assertEquals("jane@mailinator.com", updatedMember.getEmail());
+        assertEquals(null, updatedMember.getPhoneNumber());
+        assertEquals("Jane Doe", member.getName());
+    }
+
+    @Test
+    public void testMergePatchOfUnknownPropertyIsRejected() throws Exception {
+        try {
+            new MemberMergePatchReader().buildMemberMergePatch("{\"nickname\": \"JD\"}");
+            fail("should have thrown exception");
+        }
+        catch (WebApplicationException e)
+        {
+            assertEquals(422, e.getResponse().getStatus());
+        }
+    }
 }
@@ -24,13 +24,17 @@ import javax.inject.Inject;
 
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
 import org.jboss.as.quickstarts.kitchensink.model.Member;
 import org.jboss.as.quickstarts.kitchensink.service.MemberRegistration;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
 import org.jboss.as.quickstarts.kitchensink.util.Resources;
 import org.jboss.shrinkwrap.api.Archive;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
 import org.jboss.shrinkwrap.api.asset.EmptyAsset;
 import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.jboss.shrinkwrap.resolver.api.maven.Maven;
+import org.jboss.shrinkwrap.resolver.api.maven.PomEquippedResolveStage;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -38,12 +42,21 @@ import org.junit.runner.RunWith;
 public class MemberRegistrationTest {
     @Deployment
     public static Archive<?> createTestArchive() {
+        PomEquippedResolveStage resolver = Maven.resolver().offline().loadPomFromFile("pom.xml");
+
         return ShrinkWrap.create(WebArchive.class, "test.war")
-                .addClasses(Member.class, MemberRegistration.class, Resources.class)
+                .addClasses(Member.class, Resources.class, JsonMapping.class)
+                .addPackage(MemberRepository.class.getPackage())
+                .addPackage(MemberRegistration.class.getPackage())
                 .addAsResource("META-INF/test-persistence.xml", "META-INF/persistence.xml")
                 .addAsWebInfResource(EmptyAsset.INSTANCE, "beans.xml")
                 // Deploy our test datasource
-                .addAsWebInfResource("test-ds.xml");
+                .addAsWebInfResource("test-ds.xml")
+                // the data package uses Guava, which json-patch brings along
+                .addAsLibraries(resolver
+                    .resolve("com.github.fge:json-patch")
+                    .withTransitivity()
+                    .asFile());
     }
 
     @Inject
@@ -21,6 +21,7 @@ import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.container.test.api.RunAsClient;
 import org.jboss.arquillian.junit.Arquillian;
 import org.jboss.arquillian.test.api.ArquillianResource;
+import org.jboss.as.quickstarts.kitchensink.audit.MemberAuditLog;
 import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
 import org.jboss.as.quickstarts.kitchensink.model.Member;
 import org.jboss.as.quickstarts.kitchensink.rest.JaxRsActivator;
@@ -28,6 +29,7 @@ import org.jboss.as.quickstarts.kitchensink.rest.JsonPatchRequest;
 import org.jboss.as.quickstarts.kitchensink.rest.MemberResourceRESTService;
 import org.jboss.as.quickstarts.kitchensink.rest.PATCH;
 import org.jboss.as.quickstarts.kitchensink.service.MemberRegistration;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
 import org.jboss.as.quickstarts.kitchensink.util.Resources;
 import org.jboss.resteasy.client.ClientResponse;
 import org.jboss.resteasy.client.ProxyFactory;
@@ -57,6 +59,8 @@ import java.net.URL;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -74,10 +78,12 @@ public class MemberResourceRESTServiceClientTest {
         return ShrinkWrap.create(WebArchive.class, "test.war")
                 .addClasses(
                         Member.class,
-                        MemberRepository.class,
-                        MemberRegistration.class,
-                        Resources.class)
+                        Resources.class,
+                        JsonMapping.class)
+                .addPackage(MemberRepository.class.getPackage())
+                .addPackage(MemberRegistration.class.getPackage())
                 .addPackage(MemberResourceRESTService.class.getPackage())
+                .addPackage(MemberAuditLog.class.getPackage())
                 .addAsResource("META-INF/test-persistence.xml", "META-INF/persistence.xml")
                 .addAsResource("import.sql", "import.sql")
                 .addAsWebInfResource(EmptyAsset.INSTANCE, "beans.xml")
@@ -102,6 +108,16 @@ public class MemberResourceRESTServiceClientTest {
         @Produces(MediaType.APPLICATION_JSON)
         public ClientResponse<Member> lookupMemberById(@PathParam("id") long id) ;
 
+        @GET
+        @Path("/{id:[0-9][0-9]*}")
+        @Produces(MediaType.APPLICATION_JSON)
+        public ClientResponse<Map<String, Object>> lookupMemberFieldsById(@PathParam("id") long id, @QueryParam("fields") String fields) ;
+
+        @GET
+        @Path("/{id:[0-9][0-9]*}")
+        @Produces(MediaType.APPLICATION_JSON)
+        public ClientResponse<Member> lookupMemberByIdIfNoneMatch(@PathParam("id") long id, @HeaderParam("If-None-Match") String etag) ;
+
         @POST
         @Consumes(MediaType.APPLICATION_JSON)
         @Produces(MediaType.APPLICATION_JSON)
@@ -117,11 +133,42 @@ public class MemberResourceRESTServiceClientTest {
         @Produces(MediaType.APPLICATION_JSON)
         public List<Member> listAllMembers();
 
+        @GET
+        @Produces(MediaType.APPLICATION_JSON)
+        public ClientResponse<List<Member>> listMembersPage(
+                @QueryParam("limit") Integer limit,
+                @QueryParam("after") String after,
+                @QueryParam("sort") String sort);
+
+        @HEAD
+        public ClientResponse<?> countMembers();
+
+        @GET
+        @Path("/search")
+        @Produces(MediaType.APPLICATION_JSON)
+        public List<Member> searchMembers(@QueryParam("q") String q);
+
+        @GET
+        @Produces(MediaType.APPLICATION_JSON)
+        public List<Member> streamAllMembers(@QueryParam("stream") boolean stream);
+
+        @GET
+        @Produces(MediaType.APPLICATION_JSON)
+        public ClientResponse<?> streamMembersPage(@QueryParam("stream") boolean stream, @QueryParam("limit") Integer limit);
+
 
         @PUT
         @Consumes(MediaType.APPLICATION_JSON)
         @Path("/{id:[0-9][0-9]*}")
         public Response updateMember(@PathParam("id") long id, Member updatedMember);
+
+        @PUT
+        @Consumes(MediaType.APPLICATION_JSON)
+        @Path("/{id:[0-9][0-9]*}")
+        public Response updateMemberIfMatch(
+                @PathParam("id") long id,
+                @HeaderParam("If-Match") String etag,
+                Member updatedMember);
     }
 
     MemberResourceRESTServiceClient client;
@@ -184,6 +231,76 @@ public class MemberResourceRESTServiceClientTest {
         assertFalse(members.isEmpty());
     }
 
+    @Test
+    public void testStreamAllMembers() {
+        setupJane();
+        List<Member> streamed = client.streamAllMembers(true);
+        assertEquals(client.listAllMembers().size(), streamed.size());
+    }
+
+    @Test
+    public void testStreamMembersWithLimitFails() {
+        ClientResponse<?> response = client.streamMembersPage(true, 1);
+        assertEquals(400, response.getStatus());
+        response.releaseConnection();
+    }
+
+    @Test
+    public void testCountMembers() {
+        long before = countMembers();
+        setupJane();
+        assertEquals(before + 1, countMembers());
+    }
+
+    private long countMembers() {
+        ClientResponse<?> response = client.countMembers();
+        assertEquals(200, response.getStatus());
+        String total = response.getHeaders().getFirst("X-Total-Count");
+        response.releaseConnection();
+        return Long.parseLong(total);
+    }
+
+    @Test
+    public void testSearchMembersByNamePrefix() {
+        Long id = setupJane();
+
+        boolean found = false;
+        for (Member member : client.searchMembers("jan")) {
+            found |= member.getId().equals(id);
+        }
+        assertTrue(found);
+        assertEquals("John Smith", Iterables.getOnlyElement(client.searchMembers("SMI")).getName());
+    }
+
+    @Test
+    public void testListMembersPageByPage() {
+        setupJane();
+
+        ClientResponse<List<Member>> firstPage = client.listMembersPage(1, null, "id");
+        assertEquals(200, firstPage.getStatus());
+        List<Member> firstMembers = firstPage.getEntity(new GenericType<List<Member>>(){});
+        assertEquals(1, firstMembers.size());
+        String link = firstPage.getHeaders().getFirst("Link");
+        firstPage.releaseConnection();
+        assertTrue(link.endsWith("rel=\"next\""));
+
+        Matcher matcher = Pattern.compile("after=([^&>]+)").matcher(link);
+        assertTrue(matcher.find());
+        ClientResponse<List<Member>> secondPage = client.listMembersPage(1, matcher.group(1), "id");
+        assertEquals(200, secondPage.getStatus());
+        List<Member> secondMembers = secondPage.getEntity(new GenericType<List<Member>>(){});
+        secondPage.releaseConnection();
+        assertEquals(1, secondMembers.size());
+        assertTrue(secondMembers.get(0).getId() > firstMembers.get(0).getId());
+    }
+
+    @Test
+    public void testListMembersWithUnknownSortKey() {
+        ClientResponse<List<Member>> response = client.listMembersPage(1, null, "phoneNumber");
+        assertEquals(400, response.getStatus());
+        response.releaseConnection();
+    }
+
     @Test
     public void testGetById() {
         Member member = getJohn();
@@ -211,6 +328,31 @@ public class MemberResourceRESTServiceClientTest {
         assertEquals(400, response.getStatus());
     }
 
+    @Test
+    public void testUpdateMemberWithStaleETagFails() {
+        Long id = setupJane();
+        ClientResponse<Member> lookup = client.lookupMemberById(id);
+        String etag = lookup.getHeaders().getFirst("ETag");
+        Member jane = lookup.getEntity();
+        lookup.releaseConnection();
+
+        jane.setPhoneNumber("2125551218");
+        ClientResponse<?> response = (ClientResponse<?>) client.updateMemberIfMatch(id, etag, jane);
+        assertEquals(204, response.getStatus());
+        response.releaseConnection();
+
+        // the first update moved the version on, so the same tag no longer matches
+        jane.setPhoneNumber("2125551219");
+        response = (ClientResponse<?>) client.updateMemberIfMatch(id, etag, jane);
+        assertEquals(412, response.getStatus());
+        response.releaseConnection();
+
+        lookup = client.lookupMemberById(id);
+        assertEquals("2125551218", lookup.getEntity().getPhoneNumber());
+        assertFalse(etag.equals(lookup.getHeaders().getFirst("ETag")));
+        lookup.releaseConnection();
+    }
+
     private Member getJohn() {
         ClientResponse<Member> response = client.lookupMemberById(0);
         assertEquals(200, response.getStatus());
@@ -221,6 +363,37 @@ public class MemberResourceRESTServiceClientTest {
     }
 
 
+    @Test
+    public void testGetByIdWithSparseFields() {
+        ClientResponse<Map<String, Object>> response = client.lookupMemberFieldsById(0, "id,name");
+        assertEquals(200, response.getStatus());
+        Map<String, Object> john = response.getEntity(new GenericType<Map<String, Object>>(){});
+        response.releaseConnection();
+        assertEquals(2, john.size());
+        assertEquals("John Smith", john.get("name"));
+    }
+
+    @Test
+    public void testGetByIdWhenNotModified() {
+        Long id = setupJane();
+        ClientResponse<Member> response = client.lookupMemberById(id);
+        assertEquals(200, response.getStatus());
+        String etag = response.getHeaders().getFirst("ETag");
+        response.releaseConnection();
+
+        ClientResponse<Member> conditional = client.lookupMemberByIdIfNoneMatch(id, etag);
+        assertEquals(304, conditional.getStatus());
+        conditional.releaseConnection();
+
+        String patch = "[{\"op\": \"replace\", \"path\": \"/name\", \"value\": \"Jenny Doe\"}]";
+        client.patchMember(id, patch);
+
+        ClientResponse<Member> afterUpdate = client.lookupMemberByIdIfNoneMatch(id, etag);
+        assertEquals(200, afterUpdate.getStatus());
+        assertFalse(etag.equals(afterUpdate.getHeaders().getFirst("ETag")));
+        afterUpdate.releaseConnection();
+    }
+
     @Test
     public void testGetByIdWhenDoesNotExist() {
         ClientResponse<Member> response = client.lookupMemberById(42);
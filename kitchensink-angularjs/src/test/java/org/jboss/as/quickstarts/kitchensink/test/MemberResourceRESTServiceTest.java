@@ -16,14 +16,19 @@
  */
 package org.jboss.as.quickstarts.kitchensink.test;
 
+import com.github.fge.jackson.JsonLoader;
 import com.google.common.collect.Iterables;
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.as.quickstarts.kitchensink.audit.MemberAuditLog;
 import org.jboss.as.quickstarts.kitchensink.data.MemberRepository;
 import org.jboss.as.quickstarts.kitchensink.model.Member;
 import org.jboss.as.quickstarts.kitchensink.rest.*;
 import org.jboss.as.quickstarts.kitchensink.service.MemberRegistration;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
 import org.jboss.as.quickstarts.kitchensink.util.Resources;
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
 import org.jboss.shrinkwrap.api.Archive;
 import org.jboss.shrinkwrap.api.ShrinkWrap;
 import org.jboss.shrinkwrap.api.asset.EmptyAsset;
@@ -41,10 +46,15 @@ import javax.persistence.EntityNotFoundException;
 import javax.transaction.UserTransaction;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @RunWith(Arquillian.class)
@@ -58,10 +68,12 @@ public class MemberResourceRESTServiceTest {
         return ShrinkWrap.create(WebArchive.class, "test.war")
                 .addClasses(
                     Member.class,
-                    MemberRepository.class,
-                    MemberRegistration.class,
-                    Resources.class)
+                    Resources.class,
+                    JsonMapping.class)
+                .addPackage(MemberRepository.class.getPackage())
+                .addPackage(MemberRegistration.class.getPackage())
                 .addPackage(MemberResourceRESTService.class.getPackage())
+                .addPackage(MemberAuditLog.class.getPackage())
                 .addAsResource("META-INF/test-persistence.xml", "META-INF/persistence.xml")
                 .addAsWebInfResource(EmptyAsset.INSTANCE, "beans.xml")
                 // Deploy our test datasource
@@ -76,6 +88,9 @@ public class MemberResourceRESTServiceTest {
     MemberResourceRESTService service;
 
 
+    @Inject
+    MemberRepository repository;
+
     @Inject
     EntityManager em;
 
@@ -190,6 +205,64 @@ public class MemberResourceRESTServiceTest {
     }
 
 
+    @Test
+    public void testBatchRegistrationReportsEachMember() throws Exception {
+        List<Member> batch = Arrays.asList(
+            newMember("Ann Doe", "ann@mailinator.com"),
+            newMember("Ann Doe 2", "ann2@mailinator.com"),
+            newMember("Bob Doe", "john@mailinator.com"),
+            newMember("Ann Smith", "ann@mailinator.com"));
+
+        List<Map<String, Object>> report = service.createMembers(batch);
+
+        assertEquals(4, report.size());
+        assertEquals(200, report.get(0).get("status"));
+        assertEquals(400, report.get(1).get("status"));
+        assertEquals(409, report.get(2).get("status"));
+        assertEquals(409, report.get(3).get("status"));
+
+        setupTransaction();
+        Member member = em.find(Member.class, report.get(0).get("id"));
+        assertEquals("ann@mailinator.com", member.getEmail());
+        em.remove(member);
+        finishTransaction();
+    }
+
+    @Test
+    public void testImportStreamsRejectionsAndTotals() throws Exception {
+        String ndjson =
+                "{\"name\": \"Cat Doe\", \"email\": \"cat@mailinator.com\", \"phoneNumber\": \"5253555555\"}\n" +
+                "\n" +
+                "{\"name\": \"Cat Doe 2\", \"email\": \"cat2@mailinator.com\", \"phoneNumber\": \"5253555555\"}\n" +
+                "{\"name\": \n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        service.importMembers(new ByteArrayInputStream(ndjson.getBytes("UTF-8"))).write(output);
+
+        String report = output.toString("UTF-8");
+        // progress lines from the writer may come between the rejections
+        assertTrue(report.contains("{\"record\":3,\"status\":400"));
+        assertTrue(report.contains("{\"record\":4,\"status\":400"));
+        String[] lines = report.split("\n");
+        assertEquals("{\"done\":{\"read\":3,\"registered\":1,\"rejected\":2}}", lines[lines.length - 1]);
+
+        setupTransaction();
+        Member member = em
+            .createQuery("from Member where email = :email", Member.class)
+            .setParameter("email", "cat@mailinator.com")
+            .getSingleResult();
+        em.remove(member);
+        finishTransaction();
+    }
+
+    private Member newMember(String name, String email) {
+        Member member = new Member();
+        member.setName(name);
+        member.setEmail(email);
+        member.setPhoneNumber("5253555555");
+        return member;
+    }
+
     @Test
     public void testPatchApplicationWhenNameUpdateIsSuccessful() throws Exception {
         String patch =
@@ -200,7 +273,7 @@ public class MemberResourceRESTServiceTest {
                 "}]";
 
         JsonPatchRequest jsonPatch = buildPatch(patch);
-        Response response = service.patchMember(id, jsonPatch);
+        Response response = service.patchMember(id, jsonPatch, null);
 
         assertEquals(204, response.getStatus());
 
@@ -220,7 +293,7 @@ public class MemberResourceRESTServiceTest {
                 "}]";
 
         JsonPatchRequest jsonPatch = buildPatch(patch);
-        Response response = service.patchMember(id, jsonPatch);
+        Response response = service.patchMember(id, jsonPatch, null);
 
         //note: this should probably instead be 422, but for now I am keeping with 400 to match original project's service
         assertEquals(400, response.getStatus());
@@ -244,7 +317,7 @@ public class MemberResourceRESTServiceTest {
                 "}]";
 
         JsonPatchRequest jsonPatch = buildPatch(patch);
-        Response response = service.patchMember(id, jsonPatch);
+        Response response = service.patchMember(id, jsonPatch, null);
 
         //note: this should probably instead be 422, but for now I am keeping with 400 to match original project's service
         assertEquals(409, response.getStatus());
@@ -258,6 +331,70 @@ public class MemberResourceRESTServiceTest {
         finishTransaction();
     }
 
+    @Test
+    public void testPatchApplicationLoadsAndUpdatesOnce() throws Exception {
+        String patch =
+                "[{" +
+                "\"op\": \"replace\", " +
+                "\"path\": \"/phoneNumber\"," +
+                "\"value\": \"2125559999\"" +
+                "}]";
+
+        JsonPatchRequest jsonPatch = buildPatch(patch);
+        Statistics statistics = em.unwrap(Session.class).getSessionFactory().getStatistics();
+        statistics.clear();
+        Response response = service.patchMember(id, jsonPatch, null);
+
+        assertEquals(204, response.getStatus());
+        // the one load may be answered by the second-level cache
+        assertEquals(1, statistics.getEntityLoadCount() + statistics.getSecondLevelCacheHitCount());
+        assertEquals(1, statistics.getEntityUpdateCount());
+
+        setupTransaction();
+        Member member = em.find(Member.class, id);
+        assertEquals("2125559999", member.getPhoneNumber());
+        finishTransaction();
+    }
+
+    @Test
+    public void testBulkPatchReportsEachMember() throws Exception {
+        String bulkPatch =
+                "{\"ids\": [" + id + ", " + id2 + ", 424242], " +
+                "\"patch\": [{" +
+                "\"op\": \"replace\", " +
+                "\"path\": \"/phoneNumber\"," +
+                "\"value\": \"2125550000\"" +
+                "}]}";
+
+        List<Map<String, Object>> report = service.patchMembers(
+            new BulkJsonPatchRequestReader().buildBulkJsonPatchRequest(JsonLoader.fromString(bulkPatch)));
+
+        assertEquals(3, report.size());
+        assertEquals(204, report.get(0).get("status"));
+        assertEquals(204, report.get(1).get("status"));
+        assertEquals(404, report.get(2).get("status"));
+
+        setupTransaction();
+        assertEquals("2125550000", em.find(Member.class, id).getPhoneNumber());
+        assertEquals("2125550000", em.find(Member.class, id2).getPhoneNumber());
+        finishTransaction();
+    }
+
+    @Test
+    public void testLookupsAreAnsweredFromTheCaches() throws Exception {
+        Statistics statistics = em.unwrap(Session.class).getSessionFactory().getStatistics();
+
+        repository.findById(id);
+        long hitsBefore = statistics.getSecondLevelCacheHitCount();
+        repository.findById(id);
+        assertEquals(hitsBefore + 1, statistics.getSecondLevelCacheHitCount());
+
+        repository.findByEmail("jane@mailinator.com");
+        long naturalIdHitsBefore = statistics.getNaturalIdCacheHitCount();
+        assertEquals(id, repository.findByEmail("jane@mailinator.com").getId());
+        assertEquals(naturalIdHitsBefore + 1, statistics.getNaturalIdCacheHitCount());
+    }
+
     private JsonPatchRequest buildPatch(String patchAsString) {
         return new JsonPatchRequestReader().buildJsonPatchRequest(patchAsString);
     }
@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors by the @authors tag. See the copyright.txt in the
+ * distribution for a full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.as.quickstarts.kitchensink.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.as.quickstarts.kitchensink.data.MemberField;
+import org.jboss.as.quickstarts.kitchensink.data.MemberSortKey;
+import org.jboss.as.quickstarts.kitchensink.model.Member;
+import org.jboss.as.quickstarts.kitchensink.service.MemberValidator;
+import org.jboss.as.quickstarts.kitchensink.util.JsonMapping;
+import org.jboss.as.quickstarts.kitchensink.util.Resources;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.EmptyAsset;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.jboss.shrinkwrap.resolver.api.maven.Maven;
+import org.jboss.shrinkwrap.resolver.api.maven.PomEquippedResolveStage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(Arquillian.class)
+public class MemberValidatorTest {
+    @Deployment
+    public static Archive<?> createTestArchive() {
+        PomEquippedResolveStage resolver = Maven.resolver().offline().loadPomFromFile("pom.xml");
+
+        return ShrinkWrap.create(WebArchive.class, "test.war")
+                .addClasses(Member.class, MemberValidator.class, MemberField.class, MemberSortKey.class,
+                    Resources.class, JsonMapping.class)
+                .addAsResource("META-INF/test-persistence.xml", "META-INF/persistence.xml")
+                .addAsWebInfResource(EmptyAsset.INSTANCE, "beans.xml")
+                // Deploy our test datasource
+                .addAsWebInfResource("test-ds.xml")
+                // Resources produces the shared Jackson mapper, which json-patch brings along
+                .addAsLibraries(resolver
+                    .resolve("com.github.fge:json-patch")
+                    .withTransitivity()
+                    .asFile());
+    }
+
+    @Inject
+    MemberValidator memberValidator;
+
+    @Inject
+    Validator validator;
+
+    @Test
+    public void testCompiledValidationMatchesBeanValidation() throws Exception {
+        List<Member> members = Arrays.asList(
+            member("Jane Doe", "jane@mailinator.com", "2125551234"),
+            member(null, "jane@mailinator.com", "2125551234"),
+            member("", "jane@mailinator.com", "2125551234"),
+            member("Jane Doe With A Very Long Name", "jane@mailinator.com", "2125551234"),
+            member("Jane Doe 2", "jane@mailinator.com", "2125551234"),
+            member("Jane Doe", null, "2125551234"),
+            member("Jane Doe", "", "2125551234"),
+            member("Jane Doe", "jane", "2125551234"),
+            member("Jane Doe", "jane@", "2125551234"),
+            member("Jane Doe", "jane@mailinator.com", null),
+            member("Jane Doe", "jane@mailinator.com", "212555"),
+            member("Jane Doe", "jane@mailinator.com", "2125551234567"),
+            member("Jane Doe", "jane@mailinator.com", "21255512ab"),
+            member("Jane Doe", "jane@mailinator.com", "0000000000"),
+            member("Jane Doe", "jane@mailinator.com", "212555.1234"));
+
+        for (Member member : members) {
+            Map<String, Set<String>> expected = new HashMap<String, Set<String>>();
+            for (ConstraintViolation<Member> violation : validator.validate(member)) {
+                String property = violation.getPropertyPath().toString();
+                if (!expected.containsKey(property)) {
+                    expected.put(property, new HashSet<String>());
+                }
+                expected.get(property).add(violation.getMessage());
+            }
+
+            Map<String, String> actual = memberValidator.validate(member);
+
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<String, String> violation : actual.entrySet()) {
+                assertTrue(violation.getValue(), expected.get(violation.getKey()).contains(violation.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void testPartialValidationOnlyChecksTheGivenFields() throws Exception {
+        Member member = member("Jane Doe 2", "jane", "2125551234");
+
+        assertEquals(Collections.<String, String>emptyMap(),
+            memberValidator.validate(member, EnumSet.of(MemberField.PHONE_NUMBER)));
+        assertEquals(Collections.singleton("name"),
+            memberValidator.validate(member, EnumSet.of(MemberField.NAME, MemberField.PHONE_NUMBER)).keySet());
+        assertEquals(memberValidator.validate(member),
+            memberValidator.validate(member, EnumSet.allOf(MemberField.class)));
+    }
+
+    private Member member(String name, String email, String phoneNumber) {
+        Member member = new Member();
+        member.setName(name);
+        member.setEmail(email);
+        member.setPhoneNumber(phoneNumber);
+        return member;
+    }
+}